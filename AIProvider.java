@@ -1,160 +1,695 @@
-import java.net.*;
 import java.io.*;
+import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class AIProvider {
+    private static final String OPENAI_BASE_URL = "https://api.openai.com/v1";
+    private static final String GEMINI_BASE_URL = "https://generativelanguage.googleapis.com/v1beta";
+
+    // Timeouts can be tuned with STUDYMENTOR_CONNECT_TIMEOUT_MS / STUDYMENTOR_REQUEST_TIMEOUT_MS
+    static final Duration CONNECT_TIMEOUT = durationFromEnv("STUDYMENTOR_CONNECT_TIMEOUT_MS", 5000);
+    static final Duration REQUEST_TIMEOUT = durationFromEnv("STUDYMENTOR_REQUEST_TIMEOUT_MS", 60000);
+
+    // One client for the whole JVM so TLS sessions and HTTP/2 connections are
+    // reused across questions instead of being set up again on every call.
+    static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    // Async requests run off the caller's thread; at most MAX_IN_FLIGHT per
+    // provider talk to the network at once so bursts stay under rate limits.
+    static final int MAX_IN_FLIGHT = intFromEnv("STUDYMENTOR_MAX_IN_FLIGHT", 4);
+    private static final ExecutorService ASYNC_EXECUTOR = TaskExecutors.newPerTaskExecutor("ai-request");
+    private static final ConcurrentHashMap<String, Semaphore> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    // Latency, bytes, tokens and errors of every upstream call, for menu 9 and export
+    static final Metrics METRICS = new Metrics();
+
+    // Until enough samples exist for a p95, hedge after this long
+    private static final long DEFAULT_HEDGE_DELAY_MS = 2000;
+
+    // Retryable failures (429, 5xx, network) are retried with exponential
+    // backoff and full jitter, or after the server's Retry-After when given
+    static final int MAX_RETRIES = intFromEnv("STUDYMENTOR_MAX_RETRIES", 3);
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    // Gemini models to fall back on, in order, when one is out of quota for a key
+    static final List<String> GEMINI_FALLBACK_MODELS = List.of(
+            "gemini-2.0-flash-lite",
+            "gemini-2.0-flash-lite-001",
+            "gemini-2.0-flash",
+            "gemini-2.5-flash-lite",
+            "gemini-2.5-flash");
+
     private String providerName;
-    private String apiKey="";
+    private KeyPool keyPool;
+    private String baseUrl;
+    private String model;
     private boolean available;
+    private AnswerCache cache;
+    private AIProvider backup;
+    private Duration hedgeDelay;
+    private final LatencyWindow blockingLatency = new LatencyWindow(100);
+    private final LatencyWindow streamLatency = new LatencyWindow(100);
+    // Identical questions asked at the same time share one upstream call
+    private final SingleFlight flights = new SingleFlight(ASYNC_EXECUTOR);
 
     public AIProvider(String providerName) {
+        this(providerName, getAPIKeys(providerName), defaultModels(providerName), null);
+    }
+
+    // Used to point the provider at a local endpoint (see StubSSEServer)
+    public AIProvider(String providerName, String apiKey, String baseUrl) {
+        this(providerName, apiKey == null ? List.of() : List.of(apiKey), defaultModels(providerName), baseUrl);
+    }
+
+    /** A provider that spreads requests over several keys, falling back through models in order. */
+    public AIProvider(String providerName, List<String> apiKeys, List<String> models, String baseUrl) {
         this.providerName = providerName;
-        this.apiKey = getAPIKey();
-        this.available = (apiKey != null && !apiKey.isEmpty());
+        this.keyPool = new KeyPool(apiKeys, models);
+        this.baseUrl = (baseUrl != null) ? baseUrl : getBaseUrl();
+        this.model = models.get(0);
+        this.available = !keyPool.isEmpty();
+        keyPool.startChecker(this::lookUpModel);
     }
 
-    private String getAPIKey() {
-        String key = null;
+    // OPENAI_MODELS / GEMINI_MODELS (comma-separated) override the built-in lists
+    static List<String> defaultModels(String providerName) {
+        boolean openAI = providerName.equalsIgnoreCase("OpenAI");
+        List<String> models = listFromEnv(openAI ? "OPENAI_MODELS" : "GEMINI_MODELS");
+        if (!models.isEmpty()) return models;
+        return openAI ? List.of("gpt-3.5-turbo") : GEMINI_FALLBACK_MODELS;
+    }
+
+    // A comma-separated OPENAI_API_KEYS / GEMINI_API_KEYS pool, plus the single-key variables
+    static List<String> getAPIKeys(String providerName) {
+        List<String> keys = new ArrayList<>();
         if (providerName.equalsIgnoreCase("OpenAI")) {
-            key = System.getenv("OPENAI_API_KEY");
+            keys.addAll(listFromEnv("OPENAI_API_KEYS"));
+            keys.addAll(listFromEnv("OPENAI_API_KEY"));
         } else {
-            key = System.getenv("GEMINI_API_KEY");
-            if (key == null || key.isEmpty()) {
-                key = System.getenv("GOOGLE_API_KEY");
-            }
+            keys.addAll(listFromEnv("GEMINI_API_KEYS"));
+            keys.addAll(listFromEnv("GEMINI_API_KEY"));
+            keys.addAll(listFromEnv("GOOGLE_API_KEY"));
         }
-        return key;
+        return keys;
+    }
+
+    private static List<String> listFromEnv(String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) return List.of();
+        return Arrays.stream(value.split(",")).map(String::trim).filter(v -> !v.isEmpty()).toList();
+    }
+
+    private String getBaseUrl() {
+        boolean openAI = providerName.equalsIgnoreCase("OpenAI");
+        String url = System.getenv(openAI ? "OPENAI_BASE_URL" : "GEMINI_BASE_URL");
+        if (url == null || url.isEmpty()) {
+            url = openAI ? OPENAI_BASE_URL : GEMINI_BASE_URL;
+        }
+        return url;
+    }
+
+    private static Duration durationFromEnv(String name, long defaultMillis) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) {
+                return Duration.ofMillis(Long.parseLong(value.trim()));
+            }
+        } catch (NumberFormatException ignored) {}
+        return Duration.ofMillis(defaultMillis);
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) {
+                return Integer.parseInt(value.trim());
+            }
+        } catch (NumberFormatException ignored) {}
+        return defaultValue;
     }
 
     public boolean isAvailable() {
         return available;
     }
 
+    /** Stops the background key checks of this provider and its backup; call when replacing it. */
+    public void close() {
+        keyPool.stopChecker();
+        if (backup != null) backup.close();
+    }
+
+    public String getProviderName() { return providerName; }
+    public String getModel() { return model; }
+    public KeyPool getKeyPool() { return keyPool; }
+    public SingleFlight getSingleFlight() { return flights; }
+
+    public void setCache(AnswerCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sends a second request to backup when this provider has not answered
+     * (or, when streaming, produced its first token) within the hedge delay.
+     * Whichever provider responds first wins and the other request is cancelled.
+     *
+     * @param hedgeDelay fixed delay, or null to use the recent p95 of this provider
+     */
+    public void setBackup(AIProvider backup, Duration hedgeDelay) {
+        if (this.backup != null && this.backup != backup) this.backup.close();
+        this.backup = backup;
+        this.hedgeDelay = hedgeDelay;
+    }
+
     public String askQuestion(String question) throws Exception {
+        return ask(question, question, ConversationContext.EMPTY, null);
+    }
+
+    /** Asks on the caller's thread, sending the packed conversation along. */
+    public String askQuestion(String question, ConversationContext.Packed context) throws Exception {
+        return ask(question, question, context, null);
+    }
+
+    /**
+     * Asks the prompt the template renders from values. The cache and
+     * in-flight sharing key on the template's hash and the values rather than
+     * the rendered text, so editing the template starts afresh.
+     */
+    public String askTemplate(PromptTemplate template, Map<String, String> values) throws Exception {
+        return ask(template.render(values), template.key(values), ConversationContext.EMPTY, null);
+    }
+
+    /**
+     * Streams the answer as it is generated. Each text fragment is handed to
+     * onToken as soon as it arrives; the full answer is returned at the end.
+     */
+    public String askQuestionStreaming(String question, Consumer<String> onToken) throws Exception {
+        return ask(question, question, ConversationContext.EMPTY, onToken);
+    }
+
+    public CompletableFuture<String> askQuestionAsync(String question) {
+        return askQuestionAsync(question, null);
+    }
+
+    /**
+     * Runs the request on a background thread. Pass onToken to stream, or null
+     * for a single answer. Cancelling the returned future interrupts the
+     * request and closes its connection.
+     */
+    public CompletableFuture<String> askQuestionAsync(String question, Consumer<String> onToken) {
+        return askQuestionAsync(question, ConversationContext.EMPTY, onToken);
+    }
+
+    /** As above, sending the packed conversation along so the question can build on it. */
+    public CompletableFuture<String> askQuestionAsync(String question, ConversationContext.Packed context,
+                                                      Consumer<String> onToken) {
+        return askAsync(question, question, context, onToken);
+    }
+
+    /** askTemplate on a background thread, streaming when onToken is given. */
+    public CompletableFuture<String> askTemplateAsync(PromptTemplate template, Map<String, String> values,
+                                                      Consumer<String> onToken) {
+        return askAsync(template.render(values), template.key(values), ConversationContext.EMPTY, onToken);
+    }
+
+    private CompletableFuture<String> askAsync(String question, String cacheKey, ConversationContext.Packed context,
+                                               Consumer<String> onToken) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        // Tokens that arrive after cancellation are dropped, not printed
+        Consumer<String> guarded = (onToken == null) ? null : token -> {
+            if (!result.isDone()) onToken.accept(token);
+        };
+        return runAsync(result, () -> ask(question, cacheKey, context, guarded));
+    }
+
+    // cacheKey identifies the prompt to the cache and to in-flight sharing:
+    // the question itself, or a template's key
+    private String ask(String question, String cacheKey, ConversationContext.Packed context,
+                       Consumer<String> onToken) throws Exception {
         if (!available) {
             throw new Exception("API key not available for " + providerName);
         }
 
-        if (providerName.equalsIgnoreCase("OpenAI")) {
-            return callOpenAI(question);
-        } else {
-            return callGemini(question);
+        // An answer that builds on earlier turns is specific to them, so skip the cache
+        if (!context.isEmpty()) {
+            return (backup != null && backup.isAvailable())
+                    ? hedged(question, null, context, onToken) : fetch(question, null, context, onToken);
         }
+
+        String cached = cachedAnswer(cacheKey);
+        if (cached != null) {
+            if (onToken != null) onToken.accept(cached);
+            return cached;
+        }
+
+        return flights.run(AnswerCache.normalize(cacheKey), onToken, tokens ->
+                (backup != null && backup.isAvailable())
+                        ? hedged(question, cacheKey, context, tokens) : fetch(question, cacheKey, context, tokens));
     }
 
-    // ============================
-    // OpenAI integration
-    // ============================
-    private String callOpenAI(String question) throws Exception {
-    String apiUrl = "https://api.openai.com/v1/chat/completions";
+    // Runs one request on a key and model from the pool, through that key's
+    // RequestGuard. A key or model that is out of quota or refused is set aside
+    // and the request moves to the next one straight away; other retryable
+    // failures back off first. A stream that already printed tokens is never
+    // retried, since the retry would print the answer a second time.
+    // The answer is cached under cacheKey unless that is null.
+    private String fetch(String question, String cacheKey, ConversationContext.Packed context,
+                         Consumer<String> onToken) throws Exception {
+        boolean[] streamed = {false};
+        Consumer<String> tracked = (onToken == null) ? null : token -> {
+            streamed[0] = true;
+            onToken.accept(token);
+        };
+
+        int retries = 0;
+        while (true) {
+            KeyPool.Lease lease = keyPool.acquire();
+            RequestGuard guard = RequestGuard.forKey(providerName, baseUrl, lease.key());
+            CircuitBreaker breaker = guard.breaker();
+            long retryAfter;
+            Exception failure;
+            try {
+                guard.acquire();
+                String answer = fetchOnce(question, context, tracked, lease.key(), lease.model());
+                breaker.recordSuccess();
+                keyPool.recordSuccess(lease);
+                // Stored under the model that actually answered, which may be a fallback
+                if (cacheKey != null) cacheAnswer(lease.model(), cacheKey, answer);
+                return answer;
+            } catch (ApiException e) {
+                // Only server errors mean the endpoint itself is in trouble
+                if (e.getStatusCode() >= 500 || e.getStatusCode() == 408) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
+                if (setAside(lease, e) && keyPool.hasAlternative(lease) && !streamed[0]) continue;
+                if (!e.isRetryable()) throw e;
+                failure = e;
+                retryAfter = e.getRetryAfterMillis();
+            } catch (IOException e) {
+                breaker.recordFailure();
+                failure = e;
+                retryAfter = -1;
+            } catch (CircuitBreaker.OpenException e) {
+                throw e;
+            } catch (Exception e) {
+                breaker.recordAbandoned();
+                throw e;
+            } finally {
+                keyPool.release(lease);
+            }
 
-    URL url = new URL(apiUrl);
-    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-    conn.setRequestMethod("POST");
-    conn.setRequestProperty("Content-Type", "application/json");
-    conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-    conn.setDoOutput(true);
+            long delay = retryAfter >= 0 ? retryAfter : backoffMillis(retries);
+            if (retries++ >= MAX_RETRIES || streamed[0] || delay > MAX_BACKOFF_MS) throw failure;
+            if (failure instanceof ApiException && ((ApiException) failure).getStatusCode() == 429) {
+                guard.pause(delay);
+            }
+            Thread.sleep(delay);
+        }
+    }
 
-    String jsonInput = "{"
-            + "\"model\": \"gpt-3.5-turbo\","
-            + "\"messages\": [{\"role\": \"user\", \"content\": \"" + escapeJson(question) + "\"}]"
-            + "}"; //GSON 
+    // Records quota, missing-model and bad-key errors against the pool; returns
+    // true when the failure was specific to this key or model
+    private boolean setAside(KeyPool.Lease lease, ApiException e) {
+        int status = e.getStatusCode();
+        String message = String.valueOf(e.getMessage());
+        if (status == 401 || status == 403
+                || (status == 400 && (message.contains("API_KEY_INVALID") || message.contains("API key not valid")))) {
+            keyPool.recordKeyFailure(lease, message);
+            return true;
+        }
+        if (status == 429 || status == 404) {
+            keyPool.recordModelFailure(lease, e.getRetryAfterMillis(), message);
+            return true;
+        }
+        return false;
+    }
 
-    try (OutputStream os = conn.getOutputStream()) {
-        os.write(jsonInput.getBytes("UTF-8"));
+    /** Sends a minimal request with one key and model; throws if it does not succeed. */
+    public void probe(String key, String probeModel) throws Exception {
+        String question = "Reply with OK.";
+        Metrics.Call call = METRICS.start(providerName, probeModel);
+        try {
+            if (providerName.equalsIgnoreCase("OpenAI")) {
+                callOpenAI(question, ConversationContext.EMPTY, key, probeModel, call);
+            } else {
+                callGemini(question, ConversationContext.EMPTY, key, probeModel, call);
+            }
+            call.finish(null);
+        } catch (Exception e) {
+            call.finish(e);
+            throw e;
+        }
     }
 
-    int code = conn.getResponseCode();
-    InputStream stream = (code == 200) ? conn.getInputStream() : conn.getErrorStream();
-    BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-    StringBuilder response = new StringBuilder();
-    String line;
-    while ((line = reader.readLine()) != null) response.append(line);
+    /**
+     * Looks the model up with one key (GET /models/{model}). Costs no quota,
+     * so the background checker uses it: it proves the key is accepted and
+     * the model exists, and the next real request shows whether quota is back.
+     */
+    public void lookUpModel(String key, String lookupModel) throws Exception {
+        boolean openAI = providerName.equalsIgnoreCase("OpenAI");
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + "/models/" + lookupModel
+                        + (openAI ? "" : "?key=" + key)))
+                .timeout(Duration.ofMillis(KeyPool.PROBE_TIMEOUT_MS))
+                .header("Accept", "application/json")
+                .GET();
+        if (openAI) request.header("Authorization", "Bearer " + key);
+
+        HttpResponse<InputStream> response = HTTP_CLIENT.send(request.build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            String text = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            if (response.statusCode() != 200) {
+                throw new ApiException((openAI ? "OpenAI" : "Gemini") + " API Error: " + response.statusCode()
+                        + " - " + text, response.statusCode(), ApiException.retryAfterMillis(response.headers()));
+            }
+        }
+    }
 
-    if (code != 200) {
-        throw new Exception("OpenAI API Error: " + response.toString());
+    private static long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BACKOFF_BASE_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
     }
 
-    String resp = response.toString();
-    int idx = resp.indexOf("\"content\":\"");
-    if (idx == -1) return resp;
+    // One upstream call: no cache, no hedging, no retries. Holds an in-flight
+    // permit for the duration of the call.
+    private String fetchOnce(String question, ConversationContext.Packed context, Consumer<String> onToken,
+                             String key, String useModel) throws Exception {
+        Semaphore permits = IN_FLIGHT.computeIfAbsent(providerName.toLowerCase(),
+                k -> new Semaphore(MAX_IN_FLIGHT, true));
+        permits.acquire();
+        Metrics.Call call = METRICS.start(providerName, useModel);
+        try {
+            long start = System.nanoTime();
+            boolean[] firstToken = {true};
+            Consumer<String> timed = (onToken == null) ? null : token -> {
+                if (firstToken[0]) {
+                    firstToken[0] = false;
+                    streamLatency.record((System.nanoTime() - start) / 1_000_000);
+                }
+                onToken.accept(token);
+            };
 
-    int start = idx + 10;
-    int end = resp.indexOf("\"", start);
-    if (start < 0 || end < start) return resp;
+            String answer;
+            if (providerName.equalsIgnoreCase("OpenAI")) {
+                answer = (onToken == null)
+                        ? callOpenAI(question, context, key, useModel, call)
+                        : streamOpenAI(question, context, key, useModel, timed, call);
+            } else {
+                answer = (onToken == null)
+                        ? callGemini(question, context, key, useModel, call)
+                        : streamGemini(question, context, key, useModel, timed, call);
+            }
+            if (onToken == null) {
+                blockingLatency.record((System.nanoTime() - start) / 1_000_000);
+            }
+            call.finish(null);
+            return answer;
+        } catch (Exception e) {
+            call.finish(e);
+            throw e;
+        } finally {
+            permits.release();
+        }
+    }
 
-    return unescapeJson(resp.substring(start, end));
-}
+    private CompletableFuture<String> runAsync(CompletableFuture<String> result, Callable<String> call) {
+        Future<?> task = ASYNC_EXECUTOR.submit(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
 
-    // Gemini integration
+        result.whenComplete((answer, error) -> {
+            if (result.isCancelled()) task.cancel(true);
+        });
+        return result;
+    }
+
+    // ============================
+    // Hedged requests
     // ============================
-    private String callGemini(String question) throws Exception {
+    private String hedged(String question, String cacheKey, ConversationContext.Packed context,
+                          Consumer<String> onToken) throws Exception {
+        AIProvider[] providers = {this, backup};
+        List<CompletableFuture<String>> legs = new ArrayList<>();
+        AtomicInteger winner = new AtomicInteger(-1);
+        AtomicInteger failures = new AtomicInteger();
+        CompletableFuture<Integer> decided = new CompletableFuture<>();
+
+        legs.add(startLeg(providers, 0, question, cacheKey, context, onToken, winner, failures, decided));
         try {
-            String model = "gemini-2.1"; // safer than flash for v1beta
-            String apiUrl = "https://generativelanguage.googleapis.com/v1beta/models/"
-                    + model
-                    + ":generateContent?key=" + apiKey;
+            // Wait for the primary to answer (or emit a token); fail fast if it errors
+            CompletableFuture.anyOf(decided, legs.get(0)).get(currentHedgeDelay(onToken != null), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+        }
+        if (winner.get() < 0) {
+            legs.add(startLeg(providers, 1, question, cacheKey, context, onToken, winner, failures, decided));
+        }
 
-            URL url = new URL(apiUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-            conn.setDoOutput(true);
+        try {
+            int won = decided.get();
+            for (int i = 0; i < legs.size(); i++) {
+                if (i != won) legs.get(i).cancel(true);
+            }
+            return legs.get(won).get();
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        } catch (InterruptedException e) {
+            legs.forEach(leg -> leg.cancel(true));
+            throw e;
+        }
+    }
 
-            String jsonInputString = "{"
-                    + "\"contents\": [{\"parts\": [{\"text\": \"" + escapeJson(question) + "\"}]}]"
-                    + "}";
+    private static CompletableFuture<String> startLeg(AIProvider[] providers, int index, String question,
+                                                      String cacheKey, ConversationContext.Packed context, Consumer<String> onToken, AtomicInteger winner,
+                                                      AtomicInteger failures, CompletableFuture<Integer> decided) {
+        // The first leg to produce output claims the win; only its tokens are forwarded
+        Consumer<String> legTokens = (onToken == null) ? null : token -> {
+            if (winner.compareAndSet(-1, index)) decided.complete(index);
+            if (winner.get() == index) onToken.accept(token);
+        };
 
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(jsonInputString.getBytes("utf-8"));
+        AIProvider provider = providers[index];
+        CompletableFuture<String> leg = provider.runAsync(new CompletableFuture<>(),
+                () -> provider.fetch(question, cacheKey, context, legTokens));
+        leg.whenComplete((answer, error) -> {
+            if (error == null) {
+                if (winner.compareAndSet(-1, index)) decided.complete(index);
+            } else if (failures.incrementAndGet() == providers.length) {
+                decided.completeExceptionally(error);
             }
+        });
+        return leg;
+    }
 
-            int responseCode = conn.getResponseCode();
-            InputStream stream = (responseCode == 200) ? conn.getInputStream() : conn.getErrorStream();
+    private long currentHedgeDelay(boolean streaming) {
+        if (hedgeDelay != null) return hedgeDelay.toMillis();
+        LatencyWindow window = streaming ? streamLatency : blockingLatency;
+        return window.size() < 20 ? DEFAULT_HEDGE_DELAY_MS : window.percentile(0.95);
+    }
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+    // Any model's answer will do, preferred models first
+    private String cachedAnswer(String cacheKey) {
+        if (cache == null) return null;
+        for (String candidate : keyPool.getModels()) {
+            String answer = cache.get(providerName, candidate, cacheKey);
+            if (answer != null) return answer;
+        }
+        return null;
+    }
+
+    private void cacheAnswer(String answeredBy, String cacheKey, String answer) {
+        if (cache != null) cache.put(providerName, answeredBy, cacheKey, answer);
+    }
+
+    // ============================
+    // OpenAI integration
+    // ============================
+    private String callOpenAI(String question, ConversationContext.Packed context, String key, String useModel,
+                              Metrics.Call call) throws Exception {
+        String jsonInput = "{"
+                + "\"model\": \"" + useModel + "\","
+                + "\"messages\": " + context.openAIMessages(question)
+                + "}";
+
+        HttpResponse<InputStream> response = send(openAIRequest(key, jsonInput, "application/json"), call);
+        return readAnswer(response, ResponseParser.OPENAI, "OpenAI", call);
+    }
+
+    private HttpRequest openAIRequest(String key, String body, String accept) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/chat/completions"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .header("Accept", accept)
+                .header("Authorization", "Bearer " + key)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    // Gemini integration
+    // ============================
+    private String callGemini(String question, ConversationContext.Packed context, String key, String useModel,
+                              Metrics.Call call) throws Exception {
+        String jsonInputString = "{"
+                + context.geminiSystemInstruction()
+                + "\"contents\": " + context.geminiContents(question)
+                + "}";
+
+        HttpResponse<InputStream> response = send(
+                geminiRequest(useModel + ":generateContent?key=" + key, jsonInputString, "application/json"), call);
+        return readAnswer(response, ResponseParser.GEMINI, "Gemini", call);
+    }
+
+    // Sends the request, counting its body and timing the response headers
+    private static HttpResponse<InputStream> send(HttpRequest request, Metrics.Call call) throws Exception {
+        call.sent(request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L));
+        HttpResponse<InputStream> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        call.firstByte();
+        return response;
+    }
+
+    // Decodes the answer straight from the response stream; error bodies are
+    // small and read whole for the message.
+    private String readAnswer(HttpResponse<InputStream> response, ResponseParser.Extractor extractor,
+                              String label, Metrics.Call call) throws Exception {
+        try (InputStream body = call.count(response.body())) {
+            if (response.statusCode() != 200) {
+                String error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                throw new ApiException(label + " API Error: " + response.statusCode() + " - " + error,
+                        response.statusCode(), ApiException.retryAfterMillis(response.headers()));
             }
 
-            if (responseCode != 200) {
-                throw new Exception("Gemini API Error: " + responseCode + " - " + response.toString());
+            ResponseParser.Usage usage = new ResponseParser.Usage();
+            String answer = extractor.extract(new InputStreamReader(body, StandardCharsets.UTF_8), usage);
+            call.usage(usage);
+            if (answer == null) {
+                throw new Exception(label + " API Error: response contained no answer text");
             }
+            return answer;
+        }
+    }
 
-            // Extract text content
-            String resp = response.toString();
-            int idx = resp.indexOf("\"text\":");
-            if (idx == -1) return resp;
+    private HttpRequest geminiRequest(String method, String body, String accept) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/models/" + method))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", accept)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
 
-            int start = resp.indexOf("\"", idx + 7) + 1;
-            int end = resp.indexOf("\"", start);
-            if (start < 0 || end < start) return resp;
+    // ============================
+    // Streaming (SSE)
+    // ============================
+    private String streamOpenAI(String question, ConversationContext.Packed context, String key, String useModel,
+                                Consumer<String> onToken, Metrics.Call call) throws Exception {
+        String jsonInput = "{"
+                + "\"model\": \"" + useModel + "\","
+                + "\"stream\": true,"
+                + "\"stream_options\": {\"include_usage\": true},"
+                + "\"messages\": " + context.openAIMessages(question)
+                + "}";
 
-            return unescapeJson(resp.substring(start, end));
+        return readEventStream(openAIRequest(key, jsonInput, "text/event-stream"), ResponseParser.OPENAI, onToken,
+                "OpenAI", call);
+    }
 
-        } catch (Exception e) {
-            throw new Exception("Error calling Gemini API: " + e.getMessage());
+    private String streamGemini(String question, ConversationContext.Packed context, String key, String useModel,
+                                Consumer<String> onToken, Metrics.Call call) throws Exception {
+        String jsonInput = "{"
+                + context.geminiSystemInstruction()
+                + "\"contents\": " + context.geminiContents(question)
+                + "}";
+
+        HttpRequest request = geminiRequest(useModel + ":streamGenerateContent?alt=sse&key=" + key,
+                jsonInput, "text/event-stream");
+        return readEventStream(request, ResponseParser.GEMINI, onToken, "Gemini", call);
+    }
+
+    // Both providers send one JSON chunk per "data:" line, shaped like a
+    // regular response (delta.content for OpenAI, parts[].text for Gemini).
+    // Token usage arrives in the chunks too (OpenAI sends it in a final chunk).
+    private String readEventStream(HttpRequest request, ResponseParser.Extractor extractor,
+                                   Consumer<String> onToken, String label, Metrics.Call call) throws Exception {
+        HttpResponse<InputStream> response = send(request, call);
+
+        StringBuilder full = new StringBuilder();
+        ResponseParser.Usage usage = new ResponseParser.Usage();
+        try (BufferedReader lines = new BufferedReader(
+                new InputStreamReader(call.count(response.body()), StandardCharsets.UTF_8))) {
+            if (response.statusCode() != 200) {
+                lines.lines().forEach(full::append);
+                throw new ApiException(label + " API Error: " + response.statusCode() + " - " + full,
+                        response.statusCode(), ApiException.retryAfterMillis(response.headers()));
+            }
+
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException(label + " request cancelled");
+                }
+                if (!line.startsWith("data:")) continue;
+                String data = line.substring(5).trim();
+                if (data.equals("[DONE]")) break;
+
+                String token;
+                try {
+                    token = extractor.extract(new StringReader(data), usage);
+                } catch (IOException | IllegalStateException e) {
+                    continue; // skip a malformed chunk rather than abort the answer
+                }
+                if (token != null && !token.isEmpty()) {
+                    full.append(token);
+                    onToken.accept(token);
+                }
+            }
         }
+        call.usage(usage);
+        return full.toString();
     }
 
     // ============================
     // JSON helpers
     // ============================
-    private String escapeJson(String str) {
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
+    // Single pass, copying unescaped runs in bulk; also escapes the control
+    // characters JSON forbids in strings
+    static String escapeJson(String str) {
+        StringBuilder out = null;
+        int run = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
 
-    private String unescapeJson(String str) {
-        return str.replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t")
-                .replace("\\\"", "\"")
-                .replace("\\\\", "\\");
+            if (out == null) out = new StringBuilder(str.length() + 16);
+            out.append(str, run, i);
+            run = i + 1;
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> out.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        if (out == null) return str;
+        return out.append(str, run, str.length()).toString();
     }
 }
-                
\ No newline at end of file
@@ -0,0 +1,297 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches AI answers keyed on provider + model + normalized prompt.
+ *
+ * The memory tier is an access-ordered LRU bounded by entry count; the
+ * optional disk tier keeps one small file per answer so frequent prompts
+ * (motivation, common explanations) survive restarts. Both tiers honour
+ * the same TTL. The disk tier is also bounded by file count and total size
+ * (STUDYMENTOR_CACHE_DISK_ENTRIES, default 5000, and STUDYMENTOR_CACHE_DISK_MB,
+ * default 50). It is an LRU too: a file's modification time is its last use,
+ * refreshed on every disk hit and at most hourly on memory hits. Files unused
+ * for longer than the TTL are removed on startup, and when a write goes over
+ * either bound the least recently used files are deleted.
+ *
+ * Only the memory tier is guarded by the cache's lock. Disk reads, writes and
+ * pruning happen outside it, so a slow disk never holds up a memory hit.
+ */
+public class AnswerCache {
+    private static final long MAX_DISK_ENTRIES = longFromEnv("STUDYMENTOR_CACHE_DISK_ENTRIES", 5000);
+    private static final long MAX_DISK_BYTES = longFromEnv("STUDYMENTOR_CACHE_DISK_MB", 50) * 1024 * 1024;
+    private static final long TOUCH_INTERVAL_MS = 60 * 60 * 1000;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final File diskDir;
+    private final LinkedHashMap<String, Entry> memory;
+
+    // Guarded by this
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    // Disk tier bookkeeping, updated without the lock
+    private final AtomicLong diskEntries = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+
+    private static class Entry {
+        final String answer;
+        final long createdAt;
+        long touchedAt; // last time the disk file's mtime was refreshed
+
+        Entry(String answer, long createdAt, long touchedAt) {
+            this.answer = answer;
+            this.createdAt = createdAt;
+            this.touchedAt = touchedAt;
+        }
+    }
+
+    /** @param diskDir directory for the persistent tier, or null for memory only */
+    public AnswerCache(int maxEntries, Duration ttl, File diskDir) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.diskDir = diskDir;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > AnswerCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (diskDir != null) {
+            diskDir.mkdirs();
+            pruneDisk(true);
+        }
+    }
+
+    public String get(String provider, String model, String prompt) {
+        String key = key(provider, model, prompt);
+        long now = System.currentTimeMillis();
+
+        String answer = null;
+        boolean touch = false;
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null && now - entry.createdAt <= ttlMillis) {
+                memoryHits++;
+                answer = entry.answer;
+                // Keeps a hot entry from looking unused to the disk tier
+                if (diskDir != null && now - entry.touchedAt > TOUCH_INTERVAL_MS) {
+                    entry.touchedAt = now;
+                    touch = true;
+                }
+            } else if (entry != null) {
+                memory.remove(key);
+            }
+        }
+        if (answer != null) {
+            if (touch) diskFile(key).setLastModified(now);
+            return answer;
+        }
+
+        Entry entry = readDisk(key, now);
+        synchronized (this) {
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            memory.put(key, entry);
+            return entry.answer;
+        }
+    }
+
+    public void put(String provider, String model, String prompt, String answer) {
+        if (answer == null || answer.isEmpty()) return;
+        String key = key(provider, model, prompt);
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(answer, now, now);
+        synchronized (this) {
+            memory.put(key, entry);
+        }
+        writeDisk(key, entry);
+    }
+
+    public synchronized long getHits() { return memoryHits + diskHits; }
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized double getHitRate() {
+        long total = memoryHits + diskHits + misses;
+        return total == 0 ? 0 : (double) (memoryHits + diskHits) / total;
+    }
+
+    public synchronized void displayStatistics() {
+        System.out.println(Colors.YELLOW + "\n⚡ Answer Cache:" + Colors.RESET);
+        System.out.println("   Entries in memory: " + memory.size() + " / " + maxEntries);
+        System.out.println("   Hits: " + (memoryHits + diskHits) + " (memory " + memoryHits + ", disk " + diskHits + ")");
+        System.out.println("   Misses: " + misses);
+        System.out.println("   Evictions: " + evictions);
+        if (diskDir != null) {
+            System.out.printf("   On disk: %d entries, %.1f MB (evicted %d)%n",
+                    diskEntries.get(), diskBytes.get() / 1048576.0, diskEvictions.get());
+        }
+        System.out.printf("   Hit Rate: %.1f%%%n", getHitRate() * 100);
+    }
+
+    // Case and whitespace differences should not produce separate entries
+    static String normalize(String prompt) {
+        return prompt.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String key(String provider, String model, String prompt) {
+        return provider.toLowerCase(Locale.ROOT) + "|" + model + "|" + normalize(prompt);
+    }
+
+    // ============================
+    // Disk tier
+    // ============================
+    // File layout: line 1 = creation time, line 2 = full key (guards against
+    // hash collisions), remainder = answer text. Called without the lock.
+    private Entry readDisk(String key, long now) {
+        if (diskDir == null) return null;
+        File file = diskFile(key);
+        if (!file.exists()) return null;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            long createdAt = Long.parseLong(reader.readLine());
+            if (!key.equals(reader.readLine())) return null;
+            if (now - createdAt > ttlMillis) {
+                long length = file.length();
+                if (file.delete()) {
+                    diskEntries.decrementAndGet();
+                    diskBytes.addAndGet(-length);
+                }
+                return null;
+            }
+
+            StringBuilder answer = new StringBuilder();
+            char[] buf = new char[4096];
+            int n;
+            while ((n = reader.read(buf)) != -1) answer.append(buf, 0, n);
+            file.setLastModified(now);
+            return new Entry(answer.toString(), createdAt, now);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Called without the lock; each write has its own temp file, so two
+    // threads saving the same key just race to the final rename
+    private void writeDisk(String key, Entry entry) {
+        if (diskDir == null) return;
+        File target = diskFile(key);
+        long replaced = target.length();
+
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(diskDir.toPath(), target.getName(), ".tmp");
+        } catch (IOException e) {
+            System.err.println("Error saving cache entry: " + e.getMessage());
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(entry.createdAt + "\n" + key + "\n" + entry.answer);
+        } catch (IOException e) {
+            System.err.println("Error saving cache entry: " + e.getMessage());
+            tmp.toFile().delete();
+            return;
+        }
+
+        try {
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.toFile().delete();
+            return;
+        }
+        long entries = replaced == 0 ? diskEntries.incrementAndGet() : diskEntries.get();
+        long bytes = diskBytes.addAndGet(target.length() - replaced);
+        if (entries > MAX_DISK_ENTRIES || bytes > MAX_DISK_BYTES) pruneDisk(false);
+    }
+
+    // Recounts the directory and deletes the least recently used files until
+    // both bounds hold, down to 90% so the next few writes do not rescan; on
+    // startup also drops files unused for a TTL and leftover temp files. A
+    // prune already running in another thread makes this one a no-op.
+    private void pruneDisk(boolean startup) {
+        if (!pruning.compareAndSet(false, true)) return;
+        try {
+            File[] files = diskDir.listFiles();
+            if (files == null) return;
+            long now = System.currentTimeMillis();
+            List<File> entries = new ArrayList<>();
+            Map<File, Long> lastUsed = new HashMap<>();
+            long count = 0;
+            long bytes = 0;
+            for (File file : files) {
+                String name = file.getName();
+                if (startup && name.endsWith(".tmp")) {
+                    file.delete();
+                } else if (name.endsWith(".txt")) {
+                    long modified = file.lastModified();
+                    if (startup && now - modified > ttlMillis) {
+                        file.delete();
+                        continue;
+                    }
+                    entries.add(file);
+                    lastUsed.put(file, modified);
+                    count++;
+                    bytes += file.length();
+                }
+            }
+            diskEntries.set(count);
+            diskBytes.set(bytes);
+            if (count <= MAX_DISK_ENTRIES && bytes <= MAX_DISK_BYTES) return;
+
+            entries.sort(Comparator.comparingLong(lastUsed::get));
+            for (File file : entries) {
+                if (diskEntries.get() <= MAX_DISK_ENTRIES * 9 / 10 && diskBytes.get() <= MAX_DISK_BYTES * 9 / 10) break;
+                long length = file.length();
+                if (file.delete()) {
+                    diskEntries.decrementAndGet();
+                    diskBytes.addAndGet(-length);
+                    diskEvictions.incrementAndGet();
+                }
+            }
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    private File diskFile(String key) {
+        return new File(diskDir, sha256(key) + ".txt");
+    }
+
+    static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long longFromEnv(String name, long fallback) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) return Long.parseLong(value.trim());
+        } catch (NumberFormatException ignored) {}
+        return fallback;
+    }
+}
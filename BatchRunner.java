@@ -0,0 +1,188 @@
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Answers a file of questions concurrently. At most `parallelism` requests
+ * are in flight and new ones start no faster than the token bucket allows.
+ * Answers are written to the output file in input order as soon as each one
+ * (and everything before it) is done, so a long batch can be followed live.
+ *
+ * Input: one question per line (.txt, '#' lines skipped), or JSON Lines where
+ * each line is a string or an object with a "question" field (.jsonl).
+ * Output: JSON Lines for a .jsonl file, otherwise plain Q/A text.
+ */
+public class BatchRunner {
+    private final AIProvider provider;
+    private final ProgressTracker tracker;
+    private final int parallelism;
+    private final TokenBucket limiter;
+
+    /** @param ratePerSecond maximum requests started per second, or 0 for no limit */
+    public BatchRunner(AIProvider provider, ProgressTracker tracker, int parallelism, double ratePerSecond) {
+        this.provider = provider;
+        this.tracker = tracker;
+        this.parallelism = Math.max(1, parallelism);
+        this.limiter = ratePerSecond > 0 ? new TokenBucket(ratePerSecond, this.parallelism) : null;
+    }
+
+    public static class Result {
+        public final int answered;
+        public final int failed;
+        public final long elapsedMillis;
+
+        Result(int answered, int failed, long elapsedMillis) {
+            this.answered = answered;
+            this.failed = failed;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public double questionsPerSecond() {
+            return elapsedMillis == 0 ? 0 : (answered + failed) * 1000.0 / elapsedMillis;
+        }
+    }
+
+    // ============================
+    // Input
+    // ============================
+    public static List<String> readQuestions(File file) throws IOException {
+        boolean jsonLines = file.getName().endsWith(".jsonl");
+        List<String> questions = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || (!jsonLines && line.startsWith("#"))) continue;
+
+                String question = jsonLines ? questionFromJson(line) : line;
+                if (question != null && !question.isBlank()) questions.add(question.trim());
+            }
+        }
+        return questions;
+    }
+
+    private static String questionFromJson(String line) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.setStrictness(Strictness.LENIENT);
+            if (reader.peek() == JsonToken.STRING) return reader.nextString();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) return null;
+
+            String question = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("question") && reader.peek() == JsonToken.STRING) {
+                    question = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            return question;
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed question line: " + line, e);
+        }
+    }
+
+    // ============================
+    // Run
+    // ============================
+    /**
+     * Answers every question and writes the results to output. onAnswer is
+     * called in input order for each successful answer (e.g. to log history).
+     */
+    public Result run(List<String> questions, File output, BiConsumer<String, String> onAnswer) throws Exception {
+        int total = questions.size();
+        List<CompletableFuture<String>> answers = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) answers.add(new CompletableFuture<>());
+
+        long start = System.currentTimeMillis();
+        Semaphore slots = new Semaphore(parallelism);
+        Thread dispatcher = new Thread(() -> dispatch(questions, answers, slots), "batch-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        boolean jsonLines = output.getName().endsWith(".jsonl");
+        int answered = 0;
+        int failed = 0;
+        try (Writer out = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < total; i++) {
+                String question = questions.get(i);
+                String answer = null;
+                String error = null;
+                try {
+                    answer = answers.get(i).join();
+                    answered++;
+                } catch (CompletionException | CancellationException e) {
+                    error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                    failed++;
+                }
+
+                if (jsonLines) {
+                    out.write(jsonLine(i + 1, question, answer, error));
+                } else {
+                    out.write("Q" + (i + 1) + ": " + question + "\n");
+                    out.write(answer != null ? "A: " + answer + "\n\n" : "Error: " + error + "\n\n");
+                }
+                out.flush();
+
+                if (answer != null && onAnswer != null) onAnswer.accept(question, answer);
+                System.out.print("\r" + Colors.CYAN + "📦 " + (i + 1) + "/" + total + " written" + Colors.RESET);
+                System.out.flush();
+            }
+        } finally {
+            dispatcher.interrupt();
+            answers.forEach(a -> a.cancel(true));
+        }
+        System.out.println();
+        return new Result(answered, failed, System.currentTimeMillis() - start);
+    }
+
+    // Starts requests in input order, holding back whenever all slots are busy
+    // or the rate limit is reached.
+    private void dispatch(List<String> questions, List<CompletableFuture<String>> answers, Semaphore slots) {
+        for (int i = 0; i < questions.size(); i++) {
+            CompletableFuture<String> slot = answers.get(i);
+            try {
+                slots.acquire();
+                if (limiter != null) limiter.acquire();
+            } catch (InterruptedException e) {
+                for (int j = i; j < answers.size(); j++) answers.get(j).cancel(false);
+                return;
+            }
+
+            CompletableFuture<String> request = provider.askQuestionAsync(questions.get(i));
+            slot.whenComplete((a, e) -> request.cancel(true));
+            request.whenComplete((answer, error) -> {
+                slots.release();
+                if (error != null) {
+                    slot.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                } else {
+                    tracker.recordQuestion();
+                    slot.complete(answer);
+                }
+            });
+        }
+    }
+
+    private static String jsonLine(int index, String question, String answer, String error) throws IOException {
+        StringWriter line = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(line)) {
+            writer.beginObject();
+            writer.name("index").value(index);
+            writer.name("question").value(question);
+            if (answer != null) {
+                writer.name("answer").value(answer);
+            } else {
+                writer.name("error").value(error);
+            }
+            writer.endObject();
+        }
+        return line.append('\n').toString();
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.*;
+
+/**
+ * The recent turns of a conversation, sent along with each follow-up so the
+ * provider sees what "it" and "that" refer to. The turns kept verbatim stay
+ * within a token budget (STUDYMENTOR_CONTEXT_TOKENS, default 1500). Older
+ * turns are folded into a short extractive summary that may use up to a
+ * quarter of the budget.
+ *
+ * Each turn is serialized to request JSON once, when it is added, and pack()
+ * returns an immutable snapshot, so building a request only concatenates
+ * ready-made fragments instead of re-serializing the history.
+ */
+public class ConversationContext {
+    static final int DEFAULT_BUDGET = intFromEnv("STUDYMENTOR_CONTEXT_TOKENS", 1500);
+    private static final int SUMMARY_SHARE = 4;
+    private static final int SUMMARY_QUESTION_CHARS = 120;
+    private static final int SUMMARY_ANSWER_CHARS = 200;
+    private static final String SUMMARY_HEADER = "Summary of the earlier conversation with this student:";
+
+    /** Context with no history: the request carries only the question. */
+    public static final Packed EMPTY = new Packed(null, List.of(), 0, 0);
+
+    static final class Turn {
+        final int tokens;
+        final String question;
+        final String answer;
+        final String openAI;
+        final String gemini;
+
+        Turn(String question, String answer) {
+            this.question = question;
+            this.answer = answer;
+            this.tokens = TokenEstimator.estimate(question) + TokenEstimator.estimate(answer);
+            String q = AIProvider.escapeJson(question);
+            String a = AIProvider.escapeJson(answer);
+            this.openAI = "{\"role\":\"user\",\"content\":\"" + q + "\"},"
+                    + "{\"role\":\"assistant\",\"content\":\"" + a + "\"}";
+            this.gemini = "{\"role\":\"user\",\"parts\":[{\"text\":\"" + q + "\"}]},"
+                    + "{\"role\":\"model\",\"parts\":[{\"text\":\"" + a + "\"}]}";
+        }
+    }
+
+    /** What one request sends: the summary (if any) and the verbatim turns. */
+    public static final class Packed {
+        private final String escapedSummary;
+        private final List<Turn> turns;
+        private final int tokens;
+        private final int summarizedTurns;
+
+        Packed(String summary, List<Turn> turns, int tokens, int summarizedTurns) {
+            this.escapedSummary = summary == null ? null : AIProvider.escapeJson(summary);
+            this.turns = turns;
+            this.tokens = tokens;
+            this.summarizedTurns = summarizedTurns;
+        }
+
+        public boolean isEmpty() {
+            return escapedSummary == null && turns.isEmpty();
+        }
+
+        public int getTurnCount() { return turns.size(); }
+        public int getSummarizedTurns() { return summarizedTurns; }
+        public int getEstimatedTokens() { return tokens; }
+
+        /** The OpenAI "messages" array ending with the new question. */
+        String openAIMessages(String question) {
+            StringBuilder json = new StringBuilder(capacity(question));
+            json.append('[');
+            if (escapedSummary != null) {
+                json.append("{\"role\":\"system\",\"content\":\"").append(escapedSummary).append("\"},");
+            }
+            for (Turn turn : turns) json.append(turn.openAI).append(',');
+            json.append("{\"role\":\"user\",\"content\":\"").append(AIProvider.escapeJson(question)).append("\"}]");
+            return json.toString();
+        }
+
+        /** The Gemini "contents" array ending with the new question. */
+        String geminiContents(String question) {
+            StringBuilder json = new StringBuilder(capacity(question));
+            json.append('[');
+            for (Turn turn : turns) json.append(turn.gemini).append(',');
+            json.append("{\"role\":\"user\",\"parts\":[{\"text\":\"").append(AIProvider.escapeJson(question))
+                    .append("\"}]}]");
+            return json.toString();
+        }
+
+        /** Gemini's "systemInstruction" member plus a trailing comma, or "" without a summary. */
+        String geminiSystemInstruction() {
+            if (escapedSummary == null) return "";
+            return "\"systemInstruction\":{\"parts\":[{\"text\":\"" + escapedSummary + "\"}]},";
+        }
+
+        private int capacity(String question) {
+            int size = question.length() + 64 + (escapedSummary == null ? 0 : escapedSummary.length());
+            for (Turn turn : turns) size += turn.openAI.length() + 1;
+            return size;
+        }
+    }
+
+    private final int budget;
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private final ArrayDeque<String> summaryLines = new ArrayDeque<>();
+    private int turnTokens;
+    private int summaryTokens;
+    private int summarizedTurns;
+    private Packed packed = EMPTY;
+
+    public ConversationContext() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public ConversationContext(int budgetTokens) {
+        this.budget = Math.max(100, budgetTokens);
+    }
+
+    public synchronized void addTurn(String question, String answer) {
+        Turn turn = new Turn(question, answer);
+        turns.addLast(turn);
+        turnTokens += turn.tokens;
+
+        int summaryBudget = budget / SUMMARY_SHARE;
+        while (turnTokens > budget - summaryBudget && !turns.isEmpty()) {
+            Turn oldest = turns.removeFirst();
+            turnTokens -= oldest.tokens;
+            String line = summarize(oldest);
+            summaryLines.addLast(line);
+            summaryTokens += TokenEstimator.estimate(line);
+            summarizedTurns++;
+        }
+        while (summaryTokens > summaryBudget && !summaryLines.isEmpty()) {
+            summaryTokens -= TokenEstimator.estimate(summaryLines.removeFirst());
+        }
+
+        String summary = summaryLines.isEmpty() ? null
+                : SUMMARY_HEADER + "\n" + String.join("\n", summaryLines);
+        packed = new Packed(summary, List.copyOf(turns), turnTokens + summaryTokens, summarizedTurns);
+    }
+
+    /** A snapshot to send with the next question; later turns do not change it. */
+    public synchronized Packed pack() {
+        return packed;
+    }
+
+    public synchronized void clear() {
+        turns.clear();
+        summaryLines.clear();
+        turnTokens = 0;
+        summaryTokens = 0;
+        summarizedTurns = 0;
+        packed = EMPTY;
+    }
+
+    // Keeps the question and the first sentence of the answer
+    private static String summarize(Turn turn) {
+        String answer = turn.answer.strip();
+        int end = answer.length();
+        for (int i = 0; i < answer.length(); i++) {
+            char c = answer.charAt(i);
+            if (c == '\n' || ((c == '.' || c == '?' || c == '!')
+                    && (i + 1 == answer.length() || Character.isWhitespace(answer.charAt(i + 1))))) {
+                end = i + 1;
+                break;
+            }
+        }
+        return "- Asked: " + clip(turn.question.strip(), SUMMARY_QUESTION_CHARS)
+                + " | Answer began: " + clip(answer.substring(0, end).strip(), SUMMARY_ANSWER_CHARS);
+    }
+
+    private static String clip(String text, int max) {
+        text = text.replace('\n', ' ');
+        return text.length() <= max ? text : text.substring(0, max - 3) + "...";
+    }
+
+    private static int intFromEnv(String name, int fallback) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ignored) {}
+        return fallback;
+    }
+}
@@ -1,176 +1,363 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
+/**
+ * Reads and writes the profile, history and stats files. Saves are
+ * write-behind: saveProfile, appendHistory and saveStats hand the change to a
+ * PersistenceWriter thread and return immediately; flush() or closeHistory()
+ * waits for it to reach the disk. Whole files are replaced by writing a
+ * temporary file and renaming it over the old one.
+ */
 public class DataHandler {
     private static final String PROFILE_FILE = "studymentor_config.json";
     private static final String HISTORY_FILE = "study_history.json";
+    private static final String HISTORY_LOG_FILE = "study_history.jsonl";
     private static final String STATS_FILE = "study_stats.json";
+    private static final String TIMELINE_FILE = "study_activity.bin";
+    private static final String SEARCH_FILE = "study_history.search";
+
+    private final File profileFile;
+    private final File legacyHistoryFile;
+    private final File statsFile;
+    private final HistoryStore historyStore;
+    private final File timelineFile;
+    private final File searchFile;
+    private PersistenceWriter writer;
+    private StudyTimeline timeline;
+    private HistorySearch search;
+
+    public DataHandler() {
+        this(new File("."));
+    }
+
+    // All files live in dataDir (the working directory by default)
+    public DataHandler(File dataDir) {
+        this.profileFile = new File(dataDir, PROFILE_FILE);
+        this.legacyHistoryFile = new File(dataDir, HISTORY_FILE);
+        this.statsFile = new File(dataDir, STATS_FILE);
+        this.historyStore = new HistoryStore(new File(dataDir, HISTORY_LOG_FILE));
+        this.timelineFile = new File(dataDir, TIMELINE_FILE);
+        this.searchFile = new File(dataDir, SEARCH_FILE);
+    }
     
     public Profile loadProfile() {
-        try {
-            File file = new File(PROFILE_FILE);
-            if (!file.exists()) {
-                return null;
-            }
-            
-            Scanner scanner = new Scanner(file);
-            StringBuilder json = new StringBuilder();
-            while (scanner.hasNextLine()) {
-                json.append(scanner.nextLine());
+        if (!profileFile.exists()) {
+            return null;
+        }
+
+        try (JsonReader reader = openReader(profileFile)) {
+            // Older configs wrapped the profile in an array; use the first entry
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
             }
-            scanner.close();
-            
-            return parseProfile(json.toString());
-            
+            return readProfile(reader);
         } catch (Exception e) {
             return null;
         }
     }
     
+    /** Queues the profile as it is now; later edits to the object are not included. */
     public void saveProfile(Profile profile) {
-        try {
-            FileWriter writer = new FileWriter(PROFILE_FILE);
-            writer.write("{\n");
-            writer.write("  \"name\": \"" + escapeJson(profile.getName()) + "\",\n");
-            writer.write("  \"grade\": \"" + escapeJson(profile.getGrade()) + "\",\n");
-            writer.write("  \"email\": \"" + escapeJson(profile.getEmail()) + "\",\n");
-            writer.write("  \"preferredAI\": \"" + profile.getPreferredAI() + "\",\n");
-            writer.write("  \"subjects\": [");
-            List<String> subjects = profile.getSubjects();
-            for (int i = 0; i < subjects.size(); i++) {
-                writer.write("\"" + escapeJson(subjects.get(i)) + "\"");
-                if (i < subjects.size() - 1) writer.write(", ");
+        Profile copy = new Profile(profile.getName(), profile.getGrade(), profile.getEmail(),
+                List.copyOf(profile.getSubjects()), profile.getPreferredAI());
+        writer().profile(copy);
+    }
+
+    void writeProfile(Profile profile) {
+        File temp = new File(profileFile.getPath() + ".tmp");
+        try (JsonWriter writer = openWriter(temp)) {
+            writer.beginObject();
+            writer.name("name").value(nullToEmpty(profile.getName()));
+            writer.name("grade").value(nullToEmpty(profile.getGrade()));
+            writer.name("email").value(nullToEmpty(profile.getEmail()));
+            writer.name("preferredAI").value(nullToEmpty(profile.getPreferredAI()));
+            writer.name("subjects").beginArray();
+            for (String subject : profile.getSubjects()) {
+                writer.value(subject);
             }
-            writer.write("]\n");
-            writer.write("}\n");
-            writer.close();
+            writer.endArray();
+            writer.endObject();
         } catch (IOException e) {
             System.err.println("Error saving profile: " + e.getMessage());
+            return;
         }
+        replace(temp, profileFile, "profile");
     }
-    
+
+    /** Queues entries to be appended to the history log. */
+    public void appendHistory(String... entries) {
+        writer().history(Arrays.asList(entries));
+    }
+
+    void writeHistory(List<String> entries) {
+        historyStore.addAll(entries);
+        HistorySearch index;
+        synchronized (this) {
+            index = search;
+        }
+        if (index != null) index.sync(historyStore);
+    }
+
+    // Rewrites the whole history; new entries are appended through appendHistory
     public void saveHistory(List<String> history) {
-        try {
-            FileWriter writer = new FileWriter(HISTORY_FILE);
-            writer.write("[\n");
-            for (int i = 0; i < history.size(); i++) {
-                writer.write("  \"" + escapeJson(history.get(i)) + "\"");
-                if (i < history.size() - 1) writer.write(",");
-                writer.write("\n");
+        flush();
+        historyStore.compact(history);
+        resetSearch();
+    }
+
+    /** The best `limit` history entries for the query; see HistorySearch. */
+    public List<HistorySearch.Hit> searchHistory(String query, int limit) {
+        return historySearch().search(query, limit);
+    }
+
+    /** The search index, loaded on first use and caught up with the history. */
+    public HistorySearch historySearch() {
+        flush();
+        HistorySearch index;
+        synchronized (this) {
+            if (search == null) {
+                search = new HistorySearch(searchFile);
+                search.load();
             }
-            writer.write("]\n");
-            writer.close();
-        } catch (IOException e) {
-            System.err.println("Error saving history: " + e.getMessage());
+            index = search;
         }
+        index.sync(loadHistory());
+        return index;
     }
-    
-    public List<String> loadHistory() {
-        List<String> history = new ArrayList<>();
-        try {
-            File file = new File(HISTORY_FILE);
-            if (!file.exists()) {
-                return history;
+
+    // The saved index no longer matches a rewritten history
+    private synchronized void resetSearch() {
+        if (search != null) {
+            search.delete();
+        } else if (searchFile.exists() && !searchFile.delete()) {
+            System.err.println("Error deleting search index: " + searchFile);
+        }
+    }
+
+    /** Waits until every queued save has been written. */
+    public void flush() {
+        PersistenceWriter current;
+        synchronized (this) {
+            current = writer;
+        }
+        if (current != null) current.flush();
+    }
+
+    /**
+     * Writes everything still queued, saves the search index, then closes the
+     * history log and the timeline.
+     */
+    public void closeHistory() {
+        PersistenceWriter current;
+        StudyTimeline openTimeline;
+        HistorySearch index;
+        synchronized (this) {
+            current = writer;
+            writer = null;
+            openTimeline = timeline;
+            timeline = null;
+            index = search;
+            search = null;
+        }
+        if (current != null) current.close();
+        if (index != null) {
+            index.sync(historyStore);
+            index.save();
+        }
+        historyStore.close();
+        if (openTimeline != null) openTimeline.close();
+    }
+
+    /** The daily activity file, opened on first use; null if it cannot be opened. */
+    public synchronized StudyTimeline timeline() {
+        if (timeline == null) {
+            try {
+                timeline = new StudyTimeline(timelineFile);
+            } catch (IOException e) {
+                System.err.println("Error opening activity timeline: " + e.getMessage());
             }
-            
-            Scanner scanner = new Scanner(file);
-            StringBuilder json = new StringBuilder();
-            while (scanner.hasNextLine()) {
-                json.append(scanner.nextLine()).append("\n");
+        }
+        return timeline;
+    }
+
+    // Started on the first save, so handlers that only read never start a thread
+    private synchronized PersistenceWriter writer() {
+        if (writer == null) writer = new PersistenceWriter(this);
+        return writer;
+    }
+
+    // Returns the on-disk store itself: entries are read on demand. Entries
+    // still queued by appendHistory are written first.
+    public List<String> loadHistory() {
+        flush();
+        if (!historyStore.exists()) {
+            // One-time migration from the old whole-file JSON array
+            List<String> legacy = loadLegacyHistory();
+            if (!legacy.isEmpty()) {
+                historyStore.compact(legacy);
+                resetSearch();
             }
-            scanner.close();
-            
-            // Improved JSON array parsing
-            String jsonStr = json.toString();
-            int startIdx = jsonStr.indexOf("[");
-            int endIdx = jsonStr.lastIndexOf("]");
-            if (startIdx >= 0 && endIdx > startIdx) {
-                String arrayContent = jsonStr.substring(startIdx + 1, endIdx);
-                String[] parts = arrayContent.split("\"");
-                for (int i = 1; i < parts.length; i += 2) {
-                    if (i < parts.length && parts[i].trim().length() > 0) {
-                        history.add(unescapeJson(parts[i]));
-                    }
+        }
+        return historyStore;
+    }
+
+    private List<String> loadLegacyHistory() {
+        List<String> history = new ArrayList<>();
+        if (!legacyHistoryFile.exists()) {
+            return history;
+        }
+
+        try (JsonReader reader = openReader(legacyHistoryFile)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.STRING) {
+                    history.add(reader.nextString());
+                } else {
+                    reader.skipValue();
                 }
             }
-            
         } catch (Exception e) {
-            // Return empty list on error
+            // Keep whatever was read before the error
         }
         return history;
     }
     
     public void saveStats(ProgressTracker tracker) {
-        try {
-            FileWriter writer = new FileWriter(STATS_FILE);
-            writer.write("{\n");
-            writer.write("  \"questionsAsked\": " + tracker.getQuestionsAsked() + ",\n");
-            writer.write("  \"studyPlansCreated\": " + tracker.getStudyPlansCreated() + ",\n");
-            writer.write("  \"motivationSessions\": " + tracker.getMotivationSessions() + ",\n");
-            writer.write("  \"totalSessions\": " + tracker.getTotalSessions() + ",\n");
-            writer.write("  \"totalQuestions\": " + tracker.getTotalQuestions() + "\n");
-            writer.write("}\n");
-            writer.close();
+        writer().stats(tracker);
+    }
+
+    // The tracker is read when the write happens, so it saves the latest counts
+    synchronized void writeStats(ProgressTracker tracker) {
+        File temp = new File(statsFile.getPath() + ".tmp");
+        try (JsonWriter writer = openWriter(temp)) {
+            writer.beginObject();
+            writer.name("questionsAsked").value(tracker.getQuestionsAsked());
+            writer.name("studyPlansCreated").value(tracker.getStudyPlansCreated());
+            writer.name("motivationSessions").value(tracker.getMotivationSessions());
+            writer.name("totalSessions").value(tracker.getTotalSessions());
+            writer.name("totalQuestions").value(tracker.getTotalQuestions());
+            writer.name("totalStudyPlans").value(tracker.getTotalStudyPlans());
+            writer.name("totalMotivationSessions").value(tracker.getTotalMotivationSessions());
+            writeCounts(writer, "subjects", tracker.getSubjectCounts());
+            writeCounts(writer, "users", tracker.getUserCounts());
+            writer.endObject();
         } catch (IOException e) {
             System.err.println("Error saving stats: " + e.getMessage());
+            return;
         }
+        replace(temp, statsFile, "stats");
     }
-    
-    private Profile parseProfile(String json) {
-        try {
-            String name = extractField(json, "name");
-            String grade = extractField(json, "grade");
-            String email = extractField(json, "email");
-            String preferredAI = extractField(json, "preferredAI");
-            List<String> subjects = extractArray(json, "subjects");
-            
-            return new Profile(name, grade, email, subjects, preferredAI);
+
+    public synchronized void loadStats(ProgressTracker tracker) {
+        if (!statsFile.exists()) return;
+
+        long sessions = 0, questions = 0, studyPlans = 0, motivation = 0;
+        Map<String, Long> subjects = new HashMap<>();
+        Map<String, Long> users = new HashMap<>();
+        try (JsonReader reader = openReader(statsFile)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "totalSessions" -> sessions = reader.nextLong();
+                    case "totalQuestions" -> questions = reader.nextLong();
+                    case "totalStudyPlans" -> studyPlans = reader.nextLong();
+                    case "totalMotivationSessions" -> motivation = reader.nextLong();
+                    case "subjects" -> readCounts(reader, subjects);
+                    case "users" -> readCounts(reader, users);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
         } catch (Exception e) {
-            return null;
+            System.err.println("Error loading stats: " + e.getMessage());
+            return;
         }
+        tracker.restore(sessions, questions, studyPlans, motivation, subjects, users);
     }
-    
-    private String extractField(String json, String fieldName) {
-        int start = json.indexOf("\"" + fieldName + "\":\"") + fieldName.length() + 4;
-        int end = json.indexOf("\"", start);
-        if (end > start) {
-            return unescapeJson(json.substring(start, end));
+
+    private void writeCounts(JsonWriter writer, String name, Map<String, Long> counts) throws IOException {
+        writer.name(name).beginObject();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue());
         }
-        return "";
+        writer.endObject();
     }
-    
-    private List<String> extractArray(String json, String fieldName) {
-        List<String> result = new ArrayList<>();
-        String searchKey = "\"" + fieldName + "\":";
-        int start = json.indexOf(searchKey);
-        if (start < 0) return result;
-        
-        start = json.indexOf("[", start) + 1;
-        int end = json.indexOf("]", start);
-        if (end > start) {
-            String arrayStr = json.substring(start, end);
-            String[] parts = arrayStr.split("\"");
-            for (int i = 1; i < parts.length; i += 2) {
-                if (i < parts.length && parts[i].trim().length() > 0) {
-                    result.add(unescapeJson(parts[i]));
+
+    private void readCounts(JsonReader reader, Map<String, Long> counts) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            counts.put(reader.nextName(), reader.nextLong());
+        }
+        reader.endObject();
+    }
+
+    private Profile readProfile(JsonReader reader) throws IOException {
+        String name = "";
+        String grade = "";
+        String email = "";
+        String preferredAI = "";
+        List<String> subjects = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = nextString(reader);
+                case "grade" -> grade = nextString(reader);
+                case "email" -> email = nextString(reader);
+                case "preferredAI" -> preferredAI = nextString(reader);
+                case "subjects" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        subjects.add(nextString(reader));
+                    }
+                    reader.endArray();
                 }
+                default -> reader.skipValue();
             }
         }
-        return result;
+        reader.endObject();
+
+        return new Profile(name, grade, email, subjects, preferredAI);
     }
-    
-    private String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                  .replace("\"", "\\\"")
-                  .replace("\n", "\\n");
+
+    // ============================
+    // JSON helpers
+    // ============================
+    private JsonReader openReader(File file) throws IOException {
+        return new JsonReader(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
     }
-    
-    private String unescapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\n", "\n")
-                  .replace("\\\"", "\"")
-                  .replace("\\\\", "\\");
+
+    private JsonWriter openWriter(File file) throws IOException {
+        JsonWriter writer = new JsonWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+        writer.setIndent("  ");
+        return writer;
+    }
+
+    private String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
     }
-}
 
+    // A crash leaves either the old file or the new one, never half of one
+    private void replace(File temp, File target, String what) {
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving " + what + ": " + e.getMessage());
+        }
+    }
+
+    private String nullToEmpty(String str) {
+        return str == null ? "" : str;
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streams the history to a file as plain text, Markdown, JSONL or CSV,
+ * optionally gzipped, keeping only exchanges in a date range and/or
+ * containing a keyword. Entries are read one at a time from the history
+ * iterator and encoded straight into a 1 MB direct buffer that is written to
+ * a FileChannel whenever it fills, so memory use does not depend on the size
+ * of the history. Compression deflates from that buffer into a second direct
+ * buffer and frames the output as gzip itself.
+ */
+public class HistoryExporter {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public enum Format {
+        TEXT("txt"), MARKDOWN("md"), JSONL("jsonl"), CSV("csv");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** What an export did and how fast. */
+    public static final class Result {
+        public final long entriesRead;
+        public final long exchangesWritten;
+        public final long bytesWritten;
+        public final long bytesOnDisk;
+        public final long nanos;
+
+        Result(long entriesRead, long exchangesWritten, long bytesWritten, long bytesOnDisk, long nanos) {
+            this.entriesRead = entriesRead;
+            this.exchangesWritten = exchangesWritten;
+            this.bytesWritten = bytesWritten;
+            this.bytesOnDisk = bytesOnDisk;
+            this.nanos = nanos;
+        }
+
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : bytesWritten / 1e6 / (nanos / 1e9);
+        }
+
+        public double entriesPerSecond() {
+            return nanos == 0 ? 0 : entriesRead / (nanos / 1e9);
+        }
+    }
+
+    private final Format format;
+    private final boolean gzip;
+    private final String from;
+    private final String to;
+    private final String keyword;
+
+    /**
+     * from and to are inclusive yyyy-MM-dd bounds and keyword matches the
+     * question or answer ignoring case; null leaves a filter off.
+     */
+    public HistoryExporter(Format format, boolean gzip, String from, String to, String keyword) {
+        this.format = format;
+        this.gzip = gzip;
+        this.from = from;
+        this.to = to;
+        this.keyword = keyword == null || keyword.isBlank() ? null : keyword.toLowerCase(Locale.ROOT);
+    }
+
+    /** e.g. "study_history_20260101_120000" → "study_history_20260101_120000.jsonl.gz" */
+    public String fileName(String base) {
+        return base + "." + format.extension + (gzip ? ".gz" : "");
+    }
+
+    // ============================
+    // Export
+    // ============================
+    public Result export(Iterable<String> history, File file) throws IOException {
+        long start = System.nanoTime();
+        long read = 0;
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Output out = gzip ? new GzipOutput(channel) : new Output(channel)) {
+            StringBuilder record = new StringBuilder(4096);
+            header(record);
+            out.write(record);
+
+            // Q and A are separate entries; pair them up as they stream past
+            String question = null;
+            for (String entry : history) {
+                read++;
+                if (HistorySearch.isQuestion(entry)) {
+                    if (question != null && exchange(record, question, null)) {
+                        out.write(record);
+                        written++;
+                    }
+                    question = entry;
+                } else {
+                    if (exchange(record, question, entry)) {
+                        out.write(record);
+                        written++;
+                    }
+                    question = null;
+                }
+            }
+            if (question != null && exchange(record, question, null)) {
+                out.write(record);
+                written++;
+            }
+            out.finish();
+            return new Result(read, written, out.plainBytes, channel.position(), System.nanoTime() - start);
+        }
+    }
+
+    private void header(StringBuilder record) {
+        record.setLength(0);
+        if (format == Format.MARKDOWN) record.append("# Study History\n\n");
+        if (format == Format.CSV) record.append("time,question,answer\r\n");
+    }
+
+    // Formats one exchange into record; false if the filters drop it
+    private boolean exchange(StringBuilder record, String question, String answer) {
+        String entry = question != null ? question : answer;
+        String time = HistorySearch.timeOf(entry);
+        String day = time.length() >= 10 ? time.substring(0, 10) : "";
+        if (from != null && (day.isEmpty() || day.compareTo(from) < 0)) return false;
+        if (to != null && (day.isEmpty() || day.compareTo(to) > 0)) return false;
+        if (keyword != null && !contains(question, keyword) && !contains(answer, keyword)) return false;
+
+        String q = question == null ? "" : HistorySearch.body(question);
+        String a = answer == null ? "" : HistorySearch.body(answer);
+        record.setLength(0);
+        switch (format) {
+            case TEXT -> {
+                if (question != null) record.append(question).append('\n');
+                if (answer != null) record.append(answer).append('\n');
+            }
+            case MARKDOWN -> {
+                record.append("## ").append(time.isEmpty() ? "Undated" : time).append("\n\n");
+                if (question != null) record.append("**Q:** ").append(q).append("\n\n");
+                if (answer != null) record.append(a).append("\n\n");
+                record.append("---\n\n");
+            }
+            case JSONL -> record.append("{\"time\":\"").append(AIProvider.escapeJson(time))
+                    .append("\",\"question\":\"").append(AIProvider.escapeJson(q))
+                    .append("\",\"answer\":\"").append(AIProvider.escapeJson(a)).append("\"}\n");
+            case CSV -> {
+                csv(record, time).append(',');
+                csv(record, q).append(',');
+                csv(record, a).append("\r\n");
+            }
+        }
+        return true;
+    }
+
+    private static StringBuilder csv(StringBuilder record, String value) {
+        record.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') record.append('"');
+            record.append(c);
+        }
+        return record.append('"');
+    }
+
+    private static boolean contains(String entry, String lowerKeyword) {
+        return entry != null && entry.toLowerCase(Locale.ROOT).contains(lowerKeyword);
+    }
+
+    // ============================
+    // Output
+    // ============================
+    /** UTF-8 encodes text into a direct buffer and writes it out when full. */
+    private static class Output implements Closeable {
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        long plainBytes;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            encoder.encode(CharBuffer.allocate(0), buffer, true);
+            encoder.flush(buffer);
+            drain();
+        }
+
+        // Hands the buffered bytes on and empties the buffer
+        void drain() throws IOException {
+            buffer.flip();
+            plainBytes += buffer.remaining();
+            emit(buffer);
+            buffer.clear();
+        }
+
+        void emit(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) channel.write(bytes);
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /** Output that deflates into a second direct buffer, framed as a gzip file (RFC 1952). */
+    private static final class GzipOutput extends Output {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer compressed = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        GzipOutput(FileChannel channel) throws IOException {
+            super(channel);
+            // Magic, deflate, no flags, no mtime, no extra flags, unknown OS
+            super.emit(ByteBuffer.wrap(new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff}));
+        }
+
+        @Override
+        void emit(ByteBuffer bytes) throws IOException {
+            crc.update(bytes.duplicate());
+            deflater.setInput(bytes);
+            while (!deflater.needsInput()) deflate(Deflater.NO_FLUSH);
+            // The deflater keeps a reference to the buffer, which is about to be refilled
+            deflater.setInput(new byte[0]);
+        }
+
+        @Override
+        void finish() throws IOException {
+            super.finish();
+            deflater.finish();
+            while (!deflater.finished()) deflate(Deflater.NO_FLUSH);
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt((int) plainBytes).flip();
+            super.emit(trailer);
+        }
+
+        private void deflate(int flush) throws IOException {
+            deflater.deflate(compressed, flush);
+            compressed.flip();
+            super.emit(compressed);
+            compressed.clear();
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Full-text search over the history with BM25 ranking. Each history entry is
+ * a document whose id is its position in the history, and the inverted index
+ * maps every term to the entries containing it and how often.
+ *
+ * The index follows the history incrementally: sync() indexes only the
+ * entries added since the last call. save() writes it to a sidecar file
+ * (study_history.search) so the next start loads it and indexes only the
+ * entries appended after it was saved. The file remembers the hash of the
+ * last entry it covers; if that no longer matches, the history was rewritten
+ * and the index is rebuilt.
+ */
+public class HistorySearch {
+    private static final int MAGIC = 0x534D5332; // "SMS2"
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TERM = 40;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "about", "an", "and", "are", "as", "at", "be", "by", "can", "could", "did", "do", "does", "for",
+            "from", "how", "in", "is", "it", "me", "my", "of", "on", "or", "please", "tell", "that", "the", "this",
+            "to", "was", "what", "when", "which", "why", "with", "would", "you", "your");
+
+    /** Documents containing one term, in increasing id order. */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] freqs = new int[2];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size++] = freq;
+        }
+    }
+
+    /** One matching entry. */
+    public static final class Hit {
+        public final int index;
+        public final double score;
+
+        Hit(int index, double score) {
+            this.index = index;
+            this.score = score;
+        }
+    }
+
+    private final File file;
+
+    // Guarded by this
+    private final HashMap<String, Postings> terms = new HashMap<>();
+    private int[] lengths = new int[1024];
+    private int docs;
+    private long totalLength;
+    private int lastHash;
+    private boolean dirty;
+
+    public HistorySearch(File file) {
+        this.file = file;
+    }
+
+    // ============================
+    // Indexing
+    // ============================
+    /** Indexes the entries added to history since the last call. */
+    public synchronized void sync(List<String> history) {
+        int size = history.size();
+        if (size < docs || (docs > 0 && history.get(docs - 1).hashCode() != lastHash)) {
+            clear();
+        }
+        if (size == docs) return;
+        // A full pass streams the file; a short tail is read entry by entry
+        Iterator<String> entries = docs == 0 ? history.iterator() : history.subList(docs, size).iterator();
+        while (entries.hasNext() && docs < size) add(entries.next());
+    }
+
+    private void add(String entry) {
+        Map<String, Integer> counts = termCounts(entry);
+        int length = 0;
+        for (int n : counts.values()) length += n;
+        int doc = docs++;
+        if (doc == lengths.length) lengths = Arrays.copyOf(lengths, doc * 2);
+        lengths[doc] = length;
+        totalLength += length;
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            terms.computeIfAbsent(count.getKey(), k -> new Postings()).add(doc, count.getValue());
+        }
+        lastHash = entry.hashCode();
+        dirty = true;
+    }
+
+    /** Forgets everything, e.g. after the history was rewritten. */
+    public synchronized void clear() {
+        terms.clear();
+        lengths = new int[1024];
+        docs = 0;
+        totalLength = 0;
+        lastHash = 0;
+        dirty = true;
+    }
+
+    // Entries look like "[yyyy-MM-dd HH:mm:ss] Q: text" or "[...] A: text";
+    // older ones have no timestamp. Where "Q: " / "A: " would start, just past
+    // the timestamp if there is one.
+    private static int markerAt(String entry) {
+        int close = entry.startsWith("[") ? entry.indexOf("] ") : -1;
+        return close > 0 ? close + 2 : 0;
+    }
+
+    static boolean isQuestion(String entry) {
+        return entry.startsWith("Q: ", markerAt(entry));
+    }
+
+    static boolean isAnswer(String entry) {
+        return entry.startsWith("A: ", markerAt(entry));
+    }
+
+    /** The timestamp between the brackets, or "" for an undated entry. */
+    static String timeOf(String entry) {
+        int at = markerAt(entry);
+        return at > 0 ? entry.substring(1, at - 2) : "";
+    }
+
+    // Drops the "[timestamp] Q: " prefix so dates and markers are not indexed
+    static String body(String entry) {
+        int at = markerAt(entry);
+        if (entry.startsWith("Q: ", at) || entry.startsWith("A: ", at)) at += 3;
+        return entry.substring(at);
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int length = i - start;
+                if (length > 1 && length <= MAX_TERM) {
+                    String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                    if (!STOP_WORDS.contains(token)) tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // ============================
+    // Queries
+    // ============================
+    /** The best `limit` entries for the query, highest score first. */
+    public synchronized List<Hit> search(String query, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        if (queryTerms.isEmpty() || docs == 0 || limit <= 0) return List.of();
+
+        double averageLength = Math.max(1.0, (double) totalLength / docs);
+        float[] scores = new float[docs];
+        for (String term : queryTerms) {
+            Postings postings = terms.get(term);
+            if (postings == null) continue;
+            double idf = idf(term);
+            for (int i = 0; i < postings.size; i++) {
+                int doc = postings.docs[i];
+                int freq = postings.freqs[i];
+                double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                scores[doc] += (float) (idf * freq * (K1 + 1) / (freq + norm));
+            }
+        }
+
+        // Min-heap of the best hits so far; ties go to the newer entry
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1,
+                Comparator.<Hit>comparingDouble(h -> h.score).thenComparingInt(h -> h.index));
+        for (int doc = 0; doc < docs; doc++) {
+            if (scores[doc] <= 0) continue;
+            if (best.size() < limit) {
+                best.add(new Hit(doc, scores[doc]));
+            } else if (scores[doc] > best.peek().score || (scores[doc] == best.peek().score && doc > best.peek().index)) {
+                best.poll();
+                best.add(new Hit(doc, scores[doc]));
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Comparator.<Hit>comparingDouble(h -> -h.score).thenComparingInt(h -> -h.index));
+        return hits;
+    }
+
+    /**
+     * TF-IDF cosine similarity of two texts, from 0 (nothing in common) to 1
+     * (the same words in the same proportions). Terms are weighted by how rare
+     * they are in the history, so sharing "photosynthesis" counts for more than
+     * sharing "explain".
+     */
+    public synchronized double similarity(String a, String b) {
+        Map<String, Integer> left = termCounts(a);
+        Map<String, Integer> right = termCounts(b);
+        if (left.isEmpty() || right.isEmpty()) return 0;
+        double dot = 0, leftNorm = 0, rightNorm = 0;
+        for (Map.Entry<String, Integer> term : left.entrySet()) {
+            double idf = idf(term.getKey());
+            double weight = term.getValue() * idf;
+            leftNorm += weight * weight;
+            Integer other = right.get(term.getKey());
+            if (other != null) dot += weight * other * idf;
+        }
+        for (Map.Entry<String, Integer> term : right.entrySet()) {
+            double weight = term.getValue() * idf(term.getKey());
+            rightNorm += weight * weight;
+        }
+        return dot / Math.sqrt(leftNorm * rightNorm);
+    }
+
+    private double idf(String term) {
+        Postings postings = terms.get(term);
+        int df = postings == null ? 0 : postings.size;
+        return Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+    }
+
+    private static Map<String, Integer> termCounts(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String term : tokenize(body(text))) counts.merge(term, 1, Integer::sum);
+        return counts;
+    }
+
+    public synchronized int size() {
+        return docs;
+    }
+
+    public synchronized int termCount() {
+        return terms.size();
+    }
+
+    // ============================
+    // Persistence
+    // ============================
+    /** Loads the saved index, if there is one; call sync() afterwards. */
+    public synchronized void load() {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a search index");
+            int count = in.readInt();
+            int hash = in.readInt();
+            long total = in.readLong();
+            int[] lens = new int[Math.max(1024, count)];
+            for (int i = 0; i < count; i++) lens[i] = readVarInt(in);
+
+            HashMap<String, Postings> loaded = new HashMap<>();
+            int termTotal = in.readInt();
+            for (int t = 0; t < termTotal; t++) {
+                String term = in.readUTF();
+                int size = in.readInt();
+                Postings postings = new Postings();
+                postings.docs = new int[Math.max(2, size)];
+                postings.freqs = new int[Math.max(2, size)];
+                int doc = 0;
+                for (int i = 0; i < size; i++) {
+                    doc += readVarInt(in);
+                    postings.add(doc, readVarInt(in));
+                }
+                loaded.put(term, postings);
+            }
+            terms.clear();
+            terms.putAll(loaded);
+            lengths = lens;
+            docs = count;
+            lastHash = hash;
+            totalLength = total;
+            dirty = false;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading search index, rebuilding it: " + e.getMessage());
+            clear();
+        }
+    }
+
+    /** Writes the index if it changed since it was loaded or last saved. */
+    public synchronized void save() {
+        if (!dirty) return;
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(docs);
+            out.writeInt(lastHash);
+            out.writeLong(totalLength);
+            for (int i = 0; i < docs; i++) writeVarInt(out, lengths[i]);
+            out.writeInt(terms.size());
+            for (Map.Entry<String, Postings> term : terms.entrySet()) {
+                Postings postings = term.getValue();
+                out.writeUTF(term.getKey());
+                out.writeInt(postings.size);
+                int previous = 0;
+                for (int i = 0; i < postings.size; i++) {
+                    writeVarInt(out, postings.docs[i] - previous);
+                    writeVarInt(out, postings.freqs[i]);
+                    previous = postings.docs[i];
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving search index: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Error saving search index: " + e.getMessage());
+        }
+    }
+
+    /** Removes the saved index, so it is rebuilt from the history next time. */
+    public synchronized void delete() {
+        clear();
+        if (file.exists() && !file.delete()) {
+            System.err.println("Error deleting search index: " + file);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+}
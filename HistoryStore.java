@@ -0,0 +1,418 @@
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only conversation history stored as JSON Lines: one JSON string per
+ * line. Adding an entry writes only that line, so saving stays O(1) no matter
+ * how long the history gets.
+ *
+ * The store is itself a List: only the end offset of each line is kept in
+ * memory, and get(i) reads that single line from disk. The offsets are also
+ * persisted in a sidecar ".idx" file, so opening a large history only has to
+ * scan lines appended since the index was last written.
+ *
+ * Appends are fsynced in batches (every SYNC_EVERY entries or SYNC_INTERVAL_MS,
+ * and on close). A crash can at worst leave a torn last line, or an index that
+ * no longer matches the log. open() repairs either by compacting: the entries
+ * that still decode are rewritten through a temp file and atomic rename,
+ * together with a fresh index. Otherwise the log is only ever appended to.
+ */
+public class HistoryStore extends AbstractList<String> implements RandomAccess, Closeable {
+    private static final int SYNC_EVERY = 32;
+    private static final long SYNC_INTERVAL_MS = 1000;
+    private static final long SCAN_CHUNK = 64L * 1024 * 1024;
+
+    private final Path file;
+    private final Path indexFile;
+    private FileChannel channel;
+    private FileChannel indexChannel;
+    private boolean opened;
+
+    // lineEnds[i] = offset just past the '\n' of entry i
+    private long[] lineEnds = new long[1024];
+    private int count;
+    private long dataLength;
+
+    private int unsynced;
+    private long lastSync = System.currentTimeMillis();
+
+    public HistoryStore(File file) {
+        this.file = file.toPath();
+        this.indexFile = this.file.resolveSibling(file.getName() + ".idx");
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /** Builds the offset index; called lazily by the first list operation. */
+    public synchronized void open() {
+        open(true);
+    }
+
+    private void open(boolean repair) {
+        if (opened) return;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+
+            boolean indexMatched = loadIndex(size);
+            scanLines(dataLength, size);
+
+            // Anything after the last newline is a torn append. Damage is
+            // compacted away; if that fails, the tail is cut off in place.
+            if (repair && (dataLength < size || !indexMatched)) {
+                List<String> intact = intactEntries();
+                System.err.println("Error loading history: damaged, compacting it to " + intact.size() + " entries ("
+                        + (count - intact.size()) + " unreadable lines, " + (size - dataLength) + " torn bytes dropped)");
+                compact(intact);
+                open(false);
+                return;
+            }
+            if (dataLength < size) {
+                channel.truncate(dataLength);
+            }
+            writeIndex();
+            opened = true;
+        } catch (IOException e) {
+            System.err.println("Error loading history: " + e.getMessage());
+        }
+    }
+
+    // Every complete line that still decodes, for compaction during open()
+    private List<String> intactEntries() throws IOException {
+        List<String> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] line = readLine(i);
+            String entry = decodeLine(new InputStreamReader(new ByteArrayInputStream(line), StandardCharsets.UTF_8));
+            if (entry != null) entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized int size() {
+        open();
+        return count;
+    }
+
+    @Override
+    public synchronized String get(int index) {
+        open();
+        Objects.checkIndex(index, count);
+        try {
+            byte[] line = readLine(index);
+            String entry = decodeLine(new InputStreamReader(new ByteArrayInputStream(line), StandardCharsets.UTF_8));
+            return entry != null ? entry : new String(line, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The bytes of line i, without its newline
+    private byte[] readLine(int index) throws IOException {
+        long start = index == 0 ? 0 : lineEnds[index - 1];
+        ByteBuffer buf = ByteBuffer.allocate((int) (lineEnds[index] - start - 1));
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, start + buf.position()) < 0) break;
+        }
+        return buf.position() == buf.capacity() ? buf.array() : Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    /**
+     * Streams entries front to back through a single JsonReader instead of one
+     * positional read per entry. Falls back to get(i) if a line fails to parse.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        int total = size();
+        return new Iterator<>() {
+            private JsonReader reader;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next < total) return true;
+                closeReader();
+                return false;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (next > 0 && reader == null) return get(next++);
+                try {
+                    if (reader == null) {
+                        reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+                        reader.setStrictness(Strictness.LENIENT); // one top-level value per line
+                    }
+                    String entry = reader.nextString();
+                    next++;
+                    return entry;
+                } catch (IOException | IllegalStateException e) {
+                    closeReader();
+                    return get(next++);
+                }
+            }
+
+            private void closeReader() {
+                if (reader == null) return;
+                try {
+                    reader.close();
+                } catch (IOException ignored) {}
+                reader = null;
+            }
+        };
+    }
+
+    @Override
+    public synchronized boolean add(String entry) {
+        open();
+        try {
+            ByteBuffer line = ByteBuffer.wrap((encodeLine(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+            long end = dataLength + line.remaining();
+            while (line.hasRemaining()) {
+                channel.write(line, end - line.remaining());
+            }
+            addLineEnd(end);
+            dataLength = end;
+
+            ByteBuffer offset = ByteBuffer.allocate(Long.BYTES).putLong(0, end);
+            indexChannel.write(offset, (long) (count - 1) * Long.BYTES);
+
+            unsynced++;
+            long now = System.currentTimeMillis();
+            if (unsynced >= SYNC_EVERY || now - lastSync >= SYNC_INTERVAL_MS) {
+                sync();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving history: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /** Appends all entries with one write and one fsync. */
+    @Override
+    public synchronized boolean addAll(Collection<? extends String> entries) {
+        if (entries.isEmpty()) return false;
+        open();
+        try {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            ByteBuffer offsets = ByteBuffer.allocate(entries.size() * Long.BYTES);
+            long end = dataLength;
+            for (String entry : entries) {
+                byte[] line = encodeLine(entry).getBytes(StandardCharsets.UTF_8);
+                lines.write(line);
+                lines.write('\n');
+                end += line.length + 1;
+                offsets.putLong(end);
+            }
+            ByteBuffer data = ByteBuffer.wrap(lines.toByteArray());
+            while (data.hasRemaining()) {
+                channel.write(data, end - data.remaining());
+            }
+            offsets.flip();
+            long indexAt = (long) count * Long.BYTES;
+            while (offsets.hasRemaining()) {
+                indexChannel.write(offsets, indexAt + offsets.position());
+            }
+            for (int i = 0; i < offsets.limit(); i += Long.BYTES) {
+                addLineEnd(offsets.getLong(i));
+            }
+            dataLength = end;
+
+            unsynced += entries.size();
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error saving history: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the whole log with the given entries via temp file + atomic
+     * rename. The offset index is written alongside, so the next open does not
+     * have to rescan the file.
+     */
+    public synchronized void compact(List<String> entries) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Path tmpIndex = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        List<String> snapshot = new ArrayList<>(entries);
+        try {
+            closeChannels();
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                         Files.newOutputStream(tmpIndex), 64 * 1024))) {
+                OutputStream data = new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024);
+                long end = 0;
+                for (String entry : snapshot) {
+                    byte[] line = encodeLine(entry).getBytes(StandardCharsets.UTF_8);
+                    data.write(line);
+                    data.write('\n');
+                    end += line.length + 1;
+                    index.writeLong(end);
+                }
+                data.flush();
+                out.force(true);
+            }
+            // Drop the old index first: a crash before the new one lands means a rescan, never stale offsets
+            Files.deleteIfExists(indexFile);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error compacting history: " + e.getMessage());
+        }
+    }
+
+    public synchronized void flush() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error saving history: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            closeChannels();
+        } catch (IOException e) {
+            System.err.println("Error closing history: " + e.getMessage());
+        }
+    }
+
+    // ============================
+    // Offset index
+    // ============================
+    // Trusts the sidecar only as far as it still matches the data file: every
+    // recorded end must lie within the file and point just past a newline.
+    // False if it had to drop any of them.
+    private boolean loadIndex(long size) throws IOException {
+        count = 0;
+        dataLength = 0;
+        if (!Files.exists(indexFile)) return true;
+        int recorded;
+
+        try (FileChannel idx = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            int entries = (int) (idx.size() / Long.BYTES);
+            recorded = entries;
+            ByteBuffer buf = ByteBuffer.allocate(entries * Long.BYTES);
+            while (buf.hasRemaining() && idx.read(buf) > 0) {
+                // keep reading
+            }
+            buf.flip();
+
+            long previous = 0;
+            for (int i = 0; i < entries; i++) {
+                long end = buf.getLong();
+                if (end <= previous || end > size) break;
+                addLineEnd(end);
+                previous = end;
+            }
+        }
+
+        while (count > 0 && !endsLine(lineEnds[count - 1])) {
+            count--;
+        }
+        dataLength = count == 0 ? 0 : lineEnds[count - 1];
+        return count == recorded;
+    }
+
+    private boolean endsLine(long end) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        return channel.read(b, end - 1) == 1 && b.get(0) == '\n';
+    }
+
+    // Records a line end for every '\n' in [from, to) without decoding anything
+    private void scanLines(long from, long to) throws IOException {
+        long position = from;
+        while (position < to) {
+            long length = Math.min(SCAN_CHUNK, to - position);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                if (map.get(i) == '\n') {
+                    addLineEnd(position + i + 1);
+                }
+            }
+            position += length;
+        }
+        dataLength = count == 0 ? 0 : lineEnds[count - 1];
+    }
+
+    private void writeIndex() throws IOException {
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buf = ByteBuffer.allocate(count * Long.BYTES);
+        for (int i = 0; i < count; i++) buf.putLong(lineEnds[i]);
+        buf.flip();
+        long position = 0;
+        while (buf.hasRemaining()) position += indexChannel.write(buf, position);
+        indexChannel.truncate((long) count * Long.BYTES);
+    }
+
+    private void addLineEnd(long end) {
+        if (count == lineEnds.length) {
+            lineEnds = Arrays.copyOf(lineEnds, count * 2);
+        }
+        lineEnds[count++] = end;
+    }
+
+    private void sync() throws IOException {
+        if (channel != null && unsynced > 0) {
+            channel.force(false);
+        }
+        unsynced = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    private void closeChannels() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+        opened = false;
+    }
+
+    // ============================
+    // Line encoding
+    // ============================
+    // JsonWriter escapes every control character, so one entry always
+    // occupies exactly one physical line.
+    static String encodeLine(String entry) {
+        StringWriter out = new StringWriter(entry.length() + 16);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.value(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    // Returns null for a torn or malformed line
+    static String decodeLine(Reader line) {
+        try (JsonReader reader = new JsonReader(line)) {
+            if (reader.peek() != JsonToken.STRING) return null;
+            String entry = reader.nextString();
+            return reader.peek() == JsonToken.END_DOCUMENT ? entry : null;
+        } catch (IOException | IllegalStateException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The API keys and models one provider can use, with health per key and per
+ * (key, model) pair. Requests go to the least-loaded healthy key, ties broken
+ * round-robin, on the first model in the fallback list that key can still
+ * serve.
+ *
+ * A quota error cools down just that (key, model) pair; a rejected key (401 or
+ * 403) is benched as a whole. Each cool-down ends with a re-probe by the
+ * background checker: success puts the pair back, failure doubles the wait.
+ * Re-probes run on task threads, each bounded by PROBE_TIMEOUT_MS, so a
+ * hanging one cannot hold up the others.
+ */
+public class KeyPool {
+    private static final long DEFAULT_COOLDOWN_MS = 60_000;
+    private static final long MAX_COOLDOWN_MS = 10 * 60_000;
+    private static final long PROBE_INTERVAL_MS = 5_000;
+    static final long PROBE_TIMEOUT_MS = 5_000;
+
+    /** Checks the given key and model with a minimal request; throws if it fails. */
+    public interface Prober {
+        void probe(String key, String model) throws Exception;
+    }
+
+    /** The key and model chosen for one request. Hand it back with release(). */
+    public static final class Lease {
+        final Key key;
+        final String model;
+
+        Lease(Key key, String model) {
+            this.key = key;
+            this.model = model;
+        }
+
+        public String key() { return key.value; }
+        public String model() { return model; }
+    }
+
+    static final class Key {
+        final String value;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final ConcurrentHashMap<String, Health> models = new ConcurrentHashMap<>();
+        final Health self = new Health();
+        // Set while a background re-probe of this key runs
+        final AtomicBoolean probing = new AtomicBoolean();
+
+        Key(String value) {
+            this.value = value;
+        }
+
+        String label() {
+            return "..." + value.substring(Math.max(0, value.length() - 4));
+        }
+    }
+
+    // Healthy while retryAt is in the past
+    static final class Health {
+        volatile long retryAt;
+        volatile long cooldown;
+        volatile String lastError;
+
+        boolean usable(long now) {
+            return retryAt <= now;
+        }
+
+        synchronized void fail(long millis, String error) {
+            cooldown = millis > 0 ? millis : Math.min(MAX_COOLDOWN_MS, Math.max(DEFAULT_COOLDOWN_MS, cooldown * 2));
+            retryAt = System.currentTimeMillis() + cooldown;
+            lastError = error;
+        }
+
+        synchronized void ok() {
+            retryAt = 0;
+            cooldown = 0;
+            lastError = null;
+        }
+
+        // Back in use, but a re-probe cannot see quota: keep the cool-down so
+        // another quota error doubles it until a real request succeeds
+        synchronized void readmit() {
+            retryAt = 0;
+            lastError = null;
+        }
+    }
+
+    private final List<Key> keys = new ArrayList<>();
+    private final List<String> models;
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledFuture<?> checker;
+
+    // One checker thread serves every pool in the JVM; it only schedules,
+    // the re-probes themselves run on PROBES
+    private static final ExecutorService PROBES = TaskExecutors.newPerTaskExecutor("key-probe");
+    private static final ScheduledExecutorService CHECKER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread t = new Thread(task, "key-pool-checker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public KeyPool(Collection<String> keyValues, List<String> models) {
+        for (String value : new LinkedHashSet<>(keyValues)) {
+            if (value != null && !value.isBlank()) keys.add(new Key(value.trim()));
+        }
+        this.models = List.copyOf(models);
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public List<String> getModels() {
+        return models;
+    }
+
+    /**
+     * Picks a key and model for one request. When nothing is healthy it still
+     * returns the pair that recovers soonest, so the caller gets a real error
+     * (and a Retry-After) rather than silence.
+     */
+    public Lease acquire() {
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(next.getAndIncrement(), keys.size());
+
+        Lease best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        Lease fallback = null;
+        long fallbackAt = Long.MAX_VALUE;
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get((start + i) % keys.size());
+            for (String model : models) {
+                Health health = health(key, model);
+                long retryAt = Math.max(key.self.retryAt, health.retryAt);
+                if (retryAt <= now) {
+                    int load = key.inFlight.get();
+                    if (load < bestLoad) {
+                        best = new Lease(key, model);
+                        bestLoad = load;
+                    }
+                    break;
+                }
+                if (retryAt < fallbackAt) {
+                    fallback = new Lease(key, model);
+                    fallbackAt = retryAt;
+                }
+            }
+        }
+
+        Lease lease = best != null ? best : fallback;
+        lease.key.inFlight.incrementAndGet();
+        return lease;
+    }
+
+    public void release(Lease lease) {
+        lease.key.inFlight.decrementAndGet();
+    }
+
+    public void recordSuccess(Lease lease) {
+        lease.key.self.ok();
+        health(lease.key, lease.model).ok();
+    }
+
+    /** Quota exhausted or model missing for this key: cool down just this pair. */
+    public void recordModelFailure(Lease lease, long retryAfterMillis, String error) {
+        health(lease.key, lease.model).fail(retryAfterMillis, error);
+    }
+
+    /** The key itself was refused (invalid, revoked, no access). */
+    public void recordKeyFailure(Lease lease, String error) {
+        lease.key.self.fail(-1, error);
+    }
+
+    /** True if some pair other than this lease's is usable right now. */
+    public boolean hasAlternative(Lease lease) {
+        long now = System.currentTimeMillis();
+        for (Key key : keys) {
+            if (!key.self.usable(now)) continue;
+            for (String model : models) {
+                if (key == lease.key && model.equals(lease.model)) continue;
+                if (health(key, model).usable(now)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static Health health(Key key, String model) {
+        return key.models.computeIfAbsent(model, m -> new Health());
+    }
+
+    // ============================
+    // Background re-probing
+    // ============================
+    /** Re-probes cooled-down pairs as their wait runs out, on a daemon thread. */
+    public synchronized void startChecker(Prober prober) {
+        if (checker != null || keys.isEmpty()) return;
+        checker = CHECKER.scheduleWithFixedDelay(() -> probeDue(prober), PROBE_INTERVAL_MS, PROBE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops re-probing, e.g. once the provider using this pool is replaced. */
+    public synchronized void stopChecker() {
+        if (checker == null) return;
+        checker.cancel(false);
+        checker = null;
+    }
+
+    // Hands each key with something due to its own task; a key whose last
+    // re-probe is still running is skipped until the next round
+    private void probeDue(Prober prober) {
+        long now = System.currentTimeMillis();
+        for (Key key : keys) {
+            if (!key.self.usable(now) || !hasDue(key, now)) continue; // a rejected key waits out its own cool-down
+            if (!key.probing.compareAndSet(false, true)) continue;
+            try {
+                PROBES.execute(() -> {
+                    try {
+                        probeKey(key, prober);
+                    } finally {
+                        key.probing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                key.probing.set(false);
+            }
+        }
+    }
+
+    private boolean hasDue(Key key, long now) {
+        if (key.self.lastError != null) return true;
+        for (String model : models) {
+            Health health = health(key, model);
+            if (health.lastError != null && health.usable(now)) return true;
+        }
+        return false;
+    }
+
+    private void probeKey(Key key, Prober prober) {
+        long now = System.currentTimeMillis();
+        boolean keyDue = key.self.lastError != null;
+        for (String model : models) {
+            Health health = health(key, model);
+            boolean due = health.lastError != null && health.usable(now);
+            if (!due && !keyDue) continue;
+            try {
+                probeWithTimeout(prober, key.value, model);
+                key.self.ok();
+                health.readmit();
+            } catch (ApiException e) {
+                if (e.getStatusCode() == 401 || e.getStatusCode() == 403) {
+                    key.self.fail(-1, e.getMessage());
+                } else {
+                    health.fail(-1, e.getMessage());
+                }
+            } catch (Exception e) {
+                health.fail(-1, e.getMessage());
+            }
+            if (keyDue || !key.self.usable(System.currentTimeMillis())) break; // one probe judges the key
+        }
+    }
+
+    // Runs one probe on its own task and gives up on it after PROBE_TIMEOUT_MS
+    private static void probeWithTimeout(Prober prober, String key, String model) throws Exception {
+        Future<?> probe = PROBES.submit(() -> {
+            prober.probe(key, model);
+            return null;
+        });
+        try {
+            probe.get(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            probe.cancel(true);
+            throw new Exception("probe timed out after " + PROBE_TIMEOUT_MS + " ms");
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /** One (key, model) probe: "ok", "failed", "cancelled" (key already working) or "timed_out". */
+    public static final class ProbeResult {
+        public final String model;
+        public final String outcome;
+        public final int httpStatus;
+        public final long latencyMillis;
+        public final String error;
+
+        ProbeResult(String model, String outcome, int httpStatus, long latencyMillis, String error) {
+            this.model = model;
+            this.outcome = outcome;
+            this.httpStatus = httpStatus;
+            this.latencyMillis = latencyMillis;
+            this.error = error;
+        }
+    }
+
+    /** Outcome of checking one key: the model that answered first, or the last error. */
+    public static final class KeyCheck {
+        public final String key;
+        public final String workingModel;
+        public final String error;
+        public final List<ProbeResult> probes;
+
+        KeyCheck(String key, String workingModel, String error, List<ProbeResult> probes) {
+            this.key = key;
+            this.workingModel = workingModel;
+            this.error = error;
+            this.probes = probes;
+        }
+    }
+
+    // Mutable state of one probe while the check runs
+    private static final class Probe {
+        final String model;
+        volatile String outcome;
+        volatile int httpStatus;
+        volatile long latencyMillis = -1;
+        volatile String error;
+        volatile Future<?> future;
+
+        Probe(String model) {
+            this.model = model;
+        }
+    }
+
+    /**
+     * Probes every (key, model) pair at once, each on its own task. As soon as
+     * a model answers for a key, that key's other probes are cancelled. Probes
+     * still running at the deadline are cancelled and reported as timed out.
+     * What the probes find is recorded in the pool's health.
+     */
+    public List<KeyCheck> checkAll(Prober prober, long deadlineMillis) throws InterruptedException {
+        ExecutorService executor = TaskExecutors.newPerTaskExecutor("key-check");
+        Map<Key, List<Probe>> probes = new LinkedHashMap<>();
+        Map<Key, String> working = new ConcurrentHashMap<>();
+
+        for (Key key : keys) {
+            List<Probe> forKey = new ArrayList<>();
+            probes.put(key, forKey);
+            for (String model : models) forKey.add(new Probe(model));
+            for (Probe probe : forKey) {
+                probe.future = executor.submit(() -> runProbe(key, probe, forKey, working, prober));
+            }
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(deadlineMillis, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+            executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+        }
+
+        List<KeyCheck> results = new ArrayList<>();
+        probes.forEach((key, forKey) -> {
+            // Report the model the pool would pick: the first in list order that answered
+            String workingModel = null;
+            for (Probe probe : forKey) {
+                if ("ok".equals(probe.outcome)) {
+                    workingModel = probe.model;
+                    break;
+                }
+            }
+            String error = null;
+            List<ProbeResult> done = new ArrayList<>();
+            for (Probe probe : forKey) {
+                String outcome = probe.outcome;
+                if (outcome == null || outcome.equals("interrupted")) {
+                    outcome = working.containsKey(key) ? "cancelled" : "timed_out";
+                }
+                if (probe.error != null) error = probe.error;
+                done.add(new ProbeResult(probe.model, outcome, probe.httpStatus, probe.latencyMillis, probe.error));
+            }
+            if (workingModel == null && error == null) error = "no model answered within " + deadlineMillis + " ms";
+            results.add(new KeyCheck(key.value, workingModel, workingModel == null ? error : null, done));
+        });
+        return results;
+    }
+
+    private void runProbe(Key key, Probe probe, List<Probe> siblings, Map<Key, String> working, Prober prober) {
+        if (working.containsKey(key)) return;
+        Lease lease = new Lease(key, probe.model);
+        long start = System.nanoTime();
+        try {
+            prober.probe(key.value, probe.model);
+            probe.latencyMillis = (System.nanoTime() - start) / 1_000_000;
+            probe.httpStatus = 200;
+            probe.outcome = "ok";
+            recordSuccess(lease);
+            if (working.putIfAbsent(key, probe.model) == null) {
+                for (Probe other : siblings) {
+                    if (other != probe && other.future != null) other.future.cancel(true);
+                }
+            }
+        } catch (InterruptedException e) {
+            probe.outcome = "interrupted";
+        } catch (Exception e) {
+            probe.latencyMillis = (System.nanoTime() - start) / 1_000_000;
+            if (Thread.currentThread().isInterrupted()) {
+                probe.outcome = "interrupted";
+                return;
+            }
+            probe.outcome = "failed";
+            probe.error = e.getMessage();
+            if (e instanceof ApiException) {
+                ApiException api = (ApiException) e;
+                probe.httpStatus = api.getStatusCode();
+                if (api.getStatusCode() == 401 || api.getStatusCode() == 403) {
+                    recordKeyFailure(lease, probe.error);
+                    return;
+                }
+                recordModelFailure(lease, api.getRetryAfterMillis(), probe.error);
+            } else {
+                recordModelFailure(lease, -1, probe.error);
+            }
+        }
+    }
+
+    // ============================
+    // Status
+    // ============================
+    public void displayStatus(String provider) {
+        long now = System.currentTimeMillis();
+        System.out.println(Colors.YELLOW + "\n🔑 " + provider + " keys:" + Colors.RESET);
+        for (Key key : keys) {
+            if (!key.self.usable(now)) {
+                System.out.println("   " + key.label() + "  ✗ rejected, retry in "
+                        + (key.self.retryAt - now + 999) / 1000 + " s");
+                continue;
+            }
+            StringBuilder line = new StringBuilder("   " + key.label() + "  in flight " + key.inFlight.get());
+            for (String model : models) {
+                Health health = health(key, model);
+                line.append(health.usable(now) ? "  ✓ " : "  ✗ ").append(model);
+            }
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compares per-request latency of a fresh HttpURLConnection per call (the old
+ * transport) with the shared HttpClient used by AIProvider, against the local
+ * StubSSEServer so results are not dominated by network noise.
+ *
+ *   java LatencyHarness [requests] [port]
+ *   java LatencyHarness [requests] [baseUrl]   -> measure a real OpenAI-compatible endpoint
+ *
+ * Against the plain-HTTP stub the two are close; the gap opens up over TLS,
+ * where every new connection pays a full handshake.
+ */
+public class LatencyHarness {
+    private static final String QUESTION = "Give motivational study tips.";
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String target = args.length > 1 ? args[1] : "8090";
+        boolean remote = target.startsWith("http");
+        String baseUrl = remote ? target : "http://localhost:" + target + "/v1";
+        String apiKey = remote ? System.getenv("OPENAI_API_KEY") : "stub-key";
+
+        // Measure the transport, not the client-side limiter
+        RequestGuard.setRateLimit(0);
+        HttpServer server = remote ? null : StubSSEServer.start(Integer.parseInt(target));
+        try {
+            AIProvider ai = new AIProvider("OpenAI", apiKey, baseUrl);
+
+            // Warm up both paths so JIT and class loading don't skew the first run
+            for (int i = 0; i < 20; i++) {
+                callWithNewConnection(baseUrl, apiKey);
+                ai.askQuestion(QUESTION);
+            }
+
+            long[] legacy = new long[requests];
+            long[] pooled = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                callWithNewConnection(baseUrl, apiKey);
+                legacy[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                ai.askQuestion(QUESTION);
+                pooled[i] = System.nanoTime() - start;
+            }
+
+            System.out.println("Requests per transport: " + requests);
+            report("HttpURLConnection (new connection)", legacy);
+            report("Shared HttpClient (keep-alive)   ", pooled);
+        } finally {
+            if (server != null) server.stop(0);
+        }
+    }
+
+    // Mirrors the previous AIProvider.callOpenAI: a new connection per question
+    private static void callWithNewConnection(String baseUrl, String apiKey) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + "/chat/completions").openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Authorization", "Bearer " + apiKey);
+            conn.setRequestProperty("Connection", "close");
+            conn.setDoOutput(true);
+
+            String json = "{\"model\": \"gpt-3.5-turbo\","
+                    + "\"messages\": [{\"role\": \"user\", \"content\": \"" + QUESTION + "\"}]}";
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+            try (InputStream in = conn.getInputStream()) {
+                in.readAllBytes();
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static void report(String label, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double avg = Arrays.stream(sorted).average().orElse(0) / 1000.0;
+        System.out.printf("  %s  avg %7.1f us  p50 %7.1f us  p95 %7.1f us  p99 %7.1f us%n",
+                label, avg,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1000.0;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of durations in microseconds, laid out like
+ * HdrHistogram: values below 128 get a bucket each, and every power of two
+ * above that is split into 64 equal buckets, so any recorded value is known
+ * to within about 1.6%. Recording is one array increment and never locks;
+ * the whole range (1 µs to about 25 days) takes ~18 KB.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 128;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAGNITUDES = 34;
+    private static final long MAX_VALUE = (2L * HALF << MAGNITUDES) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + MAGNITUDES * HALF);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - 6; // value >> magnitude is in [64, 128)
+        return SUB_BUCKETS + (magnitude - 1) * HALF + (int) ((value >> magnitude) - HALF);
+    }
+
+    // Largest value that falls in the same bucket
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int magnitude = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << magnitude) - 1;
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getSumMicros() { return sum.sum(); }
+    public long getMaxMicros() { return max.get(); }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** The value at quantile q (0-1), in microseconds, or 0 when empty. */
+    public long percentileMicros(double q) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(highestValueAt(i), max.get());
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,34 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring of recent latency samples, used to derive the hedge delay
+ * from what a provider has actually been doing lately.
+ */
+public class LatencyWindow {
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public LatencyWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** Returns the given percentile (0-1) of the recorded samples, or -1 when empty. */
+    public synchronized long percentile(double p) {
+        if (count == 0) return -1;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(idx, count - 1))];
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds an earlier question in the history that is close enough to the new
+ * one to reuse its answer. Candidates come from the BM25 history index and
+ * are scored by TF-IDF cosine similarity of the two questions; the best one
+ * at or above STUDYMENTOR_REUSE_THRESHOLD (default 0.8, 0 turns reuse off)
+ * wins. Everything runs locally, so it also works with no network at all.
+ */
+public class LocalAnswers {
+    static final double THRESHOLD = doubleFromEnv("STUDYMENTOR_REUSE_THRESHOLD", 0.8);
+    private static final int CANDIDATES = 20;
+
+    /** A past question and its answer. */
+    public static final class Match {
+        public final String question;
+        public final String answer;
+        public final String askedAt;
+        public final double similarity;
+
+        Match(String question, String answer, String askedAt, double similarity) {
+            this.question = question;
+            this.answer = answer;
+            this.askedAt = askedAt;
+            this.similarity = similarity;
+        }
+    }
+
+    private final DataHandler dataHandler;
+    private final LongAdder reused = new LongAdder();
+
+    public LocalAnswers(DataHandler dataHandler) {
+        this.dataHandler = dataHandler;
+    }
+
+    /** The closest earlier question at or above the threshold, or null. */
+    public Match find(String question) {
+        if (THRESHOLD <= 0 || question == null || question.isBlank()) return null;
+
+        HistorySearch index = dataHandler.historySearch();
+        List<String> history = dataHandler.loadHistory();
+        Match best = null;
+        Set<Integer> seen = new HashSet<>();
+        for (HistorySearch.Hit hit : index.search(question, CANDIDATES)) {
+            // Answers match too; score the question they belong to
+            int at = HistorySearch.isQuestion(history.get(hit.index)) ? hit.index : hit.index - 1;
+            if (at < 0 || at + 1 >= history.size() || !seen.add(at)) continue;
+            String past = history.get(at);
+            String answer = history.get(at + 1);
+            if (!HistorySearch.isQuestion(past) || !HistorySearch.isAnswer(answer)) continue;
+
+            double similarity = index.similarity(question, past);
+            if (similarity >= THRESHOLD && (best == null || similarity > best.similarity)) {
+                best = new Match(HistorySearch.body(past), HistorySearch.body(answer),
+                        HistorySearch.timeOf(past), similarity);
+            }
+        }
+        return best;
+    }
+
+    /** Call when a stored answer was used instead of asking the AI. */
+    public void recordReuse() {
+        reused.increment();
+    }
+
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    private static double doubleFromEnv(String name, double fallback) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ignored) {}
+        return fallback;
+    }
+}
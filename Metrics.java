@@ -0,0 +1,269 @@
+import com.google.gson.stream.JsonWriter;
+import java.io.*;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of every upstream AI call, per provider and model: total
+ * latency and time to first byte (as histograms), request and response
+ * bytes, prompt and completion tokens reported by the provider, and failures
+ * by error code. Recording is lock-free. The numbers can be shown in the
+ * console or exported as Prometheus text or JSON.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /** Everything measured for one provider and model. */
+    public static final class Series {
+        final String provider;
+        final String model;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram firstByte = new LatencyHistogram();
+        final LongAdder requests = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder completionTokens = new LongAdder();
+        final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        Series(String provider, String model) {
+            this.provider = provider;
+            this.model = model;
+        }
+
+        long errorCount() {
+            long total = 0;
+            for (LongAdder n : errors.values()) total += n.sum();
+            return total;
+        }
+    }
+
+    /** One call in progress. Report what happens to it, then finish() it once. */
+    public static final class Call {
+        private final Series series;
+        private final long start = System.nanoTime();
+        private boolean firstByteSeen;
+
+        Call(Series series) {
+            this.series = series;
+            series.requests.increment();
+        }
+
+        public void sent(long bytes) {
+            if (bytes > 0) series.bytesSent.add(bytes);
+        }
+
+        /** The response status line and headers have arrived. */
+        public void firstByte() {
+            if (firstByteSeen) return;
+            firstByteSeen = true;
+            series.firstByte.recordNanos(System.nanoTime() - start);
+        }
+
+        /** Wraps a response body so the bytes read from it are counted. */
+        public InputStream count(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) series.bytesReceived.increment();
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n > 0) series.bytesReceived.add(n);
+                    return n;
+                }
+            };
+        }
+
+        public void usage(ResponseParser.Usage usage) {
+            if (usage.promptTokens > 0) series.promptTokens.add(usage.promptTokens);
+            if (usage.completionTokens > 0) series.completionTokens.add(usage.completionTokens);
+        }
+
+        /** Records the latency of a successful call, or the error code of a failed one. */
+        public void finish(Exception error) {
+            if (error == null) {
+                series.latency.recordNanos(System.nanoTime() - start);
+            } else {
+                series.errors.computeIfAbsent(errorCode(error), k -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+
+    public Call start(String provider, String model) {
+        String key = provider + "|" + model;
+        Series s = series.get(key);
+        if (s == null) s = series.computeIfAbsent(key, k -> new Series(provider, model));
+        return new Call(s);
+    }
+
+    static String errorCode(Exception e) {
+        if (e instanceof ApiException) return String.valueOf(((ApiException) e).getStatusCode());
+        if (e instanceof HttpTimeoutException) return "timeout";
+        if (e instanceof InterruptedException) return "cancelled";
+        if (e instanceof IOException) return "io";
+        return "other";
+    }
+
+    private List<Series> sorted() {
+        List<Series> all = new ArrayList<>(series.values());
+        all.sort(Comparator.comparing((Series s) -> s.provider).thenComparing(s -> s.model));
+        return all;
+    }
+
+    // ============================
+    // Console
+    // ============================
+    public void display() {
+        System.out.println(Colors.YELLOW + "\n⏱️ AI Calls:" + Colors.RESET);
+        List<Series> all = sorted();
+        if (all.isEmpty()) {
+            System.out.println("   No calls yet");
+            return;
+        }
+        for (Series s : all) {
+            System.out.println("   " + Colors.CYAN + s.provider + " / " + s.model + Colors.RESET);
+            System.out.println("      Requests: " + s.requests.sum() + ", errors: " + s.errorCount()
+                    + (s.errors.isEmpty() ? "" : " " + errorSummary(s)));
+            System.out.printf("      Latency p50 %s, p90 %s, p99 %s, max %s%n",
+                    millis(s.latency.percentileMicros(0.5)), millis(s.latency.percentileMicros(0.9)),
+                    millis(s.latency.percentileMicros(0.99)), millis(s.latency.getMaxMicros()));
+            System.out.printf("      First byte p50 %s, p90 %s%n",
+                    millis(s.firstByte.percentileMicros(0.5)), millis(s.firstByte.percentileMicros(0.9)));
+            System.out.println("      Bytes sent " + s.bytesSent.sum() + ", received " + s.bytesReceived.sum());
+            System.out.println("      Tokens prompt " + s.promptTokens.sum() + ", completion " + s.completionTokens.sum());
+        }
+    }
+
+    private static String errorSummary(Series s) {
+        StringJoiner codes = new StringJoiner(", ", "(", ")");
+        new TreeMap<>(s.errors).forEach((code, n) -> codes.add(code + " x" + n.sum()));
+        return codes.toString();
+    }
+
+    private static String millis(long micros) {
+        return micros >= 10_000 ? (micros / 1000) + " ms" : String.format("%.1f ms", micros / 1000.0);
+    }
+
+    // ============================
+    // Export
+    // ============================
+    /** Prometheus text exposition format (version 0.0.4). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        List<Series> all = sorted();
+
+        counter(out, all, "studymentor_ai_requests_total", "Upstream AI calls started", s -> s.requests.sum());
+        out.append("# HELP studymentor_ai_errors_total Failed upstream AI calls by error code\n")
+                .append("# TYPE studymentor_ai_errors_total counter\n");
+        for (Series s : all) {
+            new TreeMap<>(s.errors).forEach((code, n) -> out.append("studymentor_ai_errors_total")
+                    .append(labels(s, "code", code)).append(' ').append(n.sum()).append('\n'));
+        }
+        summary(out, all, "studymentor_ai_latency_seconds", "Latency of successful AI calls", s -> s.latency);
+        summary(out, all, "studymentor_ai_first_byte_seconds", "Time until response headers arrived", s -> s.firstByte);
+        counter(out, all, "studymentor_ai_request_bytes_total", "Request body bytes sent", s -> s.bytesSent.sum());
+        counter(out, all, "studymentor_ai_response_bytes_total", "Response body bytes received", s -> s.bytesReceived.sum());
+        counter(out, all, "studymentor_ai_prompt_tokens_total", "Prompt tokens reported by the provider", s -> s.promptTokens.sum());
+        counter(out, all, "studymentor_ai_completion_tokens_total", "Completion tokens reported by the provider", s -> s.completionTokens.sum());
+        return out.toString();
+    }
+
+    private interface Value {
+        long of(Series s);
+    }
+
+    private interface Histogram {
+        LatencyHistogram of(Series s);
+    }
+
+    private static void counter(StringBuilder out, List<Series> all, String name, String help, Value value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Series s : all) out.append(name).append(labels(s)).append(' ').append(value.of(s)).append('\n');
+    }
+
+    private static void summary(StringBuilder out, List<Series> all, String name, String help, Histogram histogram) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (Series s : all) {
+            LatencyHistogram h = histogram.of(s);
+            for (double q : QUANTILES) {
+                out.append(name).append(labels(s, "quantile", String.valueOf(q))).append(' ')
+                        .append(h.percentileMicros(q) / 1e6).append('\n');
+            }
+            out.append(name).append("_sum").append(labels(s)).append(' ').append(h.getSumMicros() / 1e6).append('\n');
+            out.append(name).append("_count").append(labels(s)).append(' ').append(h.getCount()).append('\n');
+        }
+    }
+
+    private static String labels(Series s, String... extra) {
+        StringBuilder out = new StringBuilder("{provider=\"").append(labelValue(s.provider))
+                .append("\",model=\"").append(labelValue(s.model)).append('"');
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            out.append(',').append(extra[i]).append("=\"").append(labelValue(extra[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String labelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public String toJson() throws IOException {
+        StringWriter text = new StringWriter();
+        try (JsonWriter json = new JsonWriter(text)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("series").beginArray();
+            for (Series s : sorted()) {
+                json.beginObject();
+                json.name("provider").value(s.provider);
+                json.name("model").value(s.model);
+                json.name("requests").value(s.requests.sum());
+                json.name("errors").beginObject();
+                for (Map.Entry<String, LongAdder> e : new TreeMap<>(s.errors).entrySet()) {
+                    json.name(e.getKey()).value(e.getValue().sum());
+                }
+                json.endObject();
+                histogram(json, "latencyMillis", s.latency);
+                histogram(json, "firstByteMillis", s.firstByte);
+                json.name("bytesSent").value(s.bytesSent.sum());
+                json.name("bytesReceived").value(s.bytesReceived.sum());
+                json.name("promptTokens").value(s.promptTokens.sum());
+                json.name("completionTokens").value(s.completionTokens.sum());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        return text.toString();
+    }
+
+    private static void histogram(JsonWriter json, String name, LatencyHistogram h) throws IOException {
+        json.name(name).beginObject();
+        json.name("count").value(h.getCount());
+        json.name("mean").value(h.getMeanMicros() / 1000.0);
+        json.name("p50").value(h.percentileMicros(0.5) / 1000.0);
+        json.name("p90").value(h.percentileMicros(0.9) / 1000.0);
+        json.name("p99").value(h.percentileMicros(0.99) / 1000.0);
+        json.name("max").value(h.getMaxMicros() / 1000.0);
+        json.endObject();
+    }
+
+    /** Writes toPrometheus() or toJson(), chosen by the file extension (.json for JSON). */
+    public void export(File file) throws IOException {
+        String content = file.getName().endsWith(".json") ? toJson() : toPrometheus();
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+    }
+}
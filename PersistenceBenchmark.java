@@ -0,0 +1,118 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Times DataHandler load/save and reports heap allocated per operation, for
+ * the profile and for histories of 1k, 10k and 100k entries. Everything is
+ * written to a temporary directory, never to the real data files.
+ *
+ *   java PersistenceBenchmark
+ */
+public class PersistenceBenchmark {
+    private static final int PROFILE_ROUNDS = 2000;
+    private static final int[] HISTORY_SIZES = {1_000, 10_000, 100_000};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("studymentor-bench");
+        try {
+            benchmarkProfile(dir.toFile());
+            for (int size : HISTORY_SIZES) {
+                benchmarkHistory(dir.toFile(), size);
+            }
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void benchmarkProfile(File dir) {
+        DataHandler handler = new DataHandler(dir);
+        Profile profile = new Profile("Benchmark Student", "College", "student@example.com",
+                List.of("Math", "Physics", "Chemistry", "History"), "OpenAI");
+
+        // Warm up
+        for (int i = 0; i < PROFILE_ROUNDS; i++) {
+            handler.writeProfile(profile);
+            handler.loadProfile();
+        }
+
+        Measurement save = measure(PROFILE_ROUNDS, () -> handler.writeProfile(profile));
+        Measurement load = measure(PROFILE_ROUNDS, handler::loadProfile);
+        System.out.println("Profile");
+        save.print("writeProfile");
+        load.print("loadProfile");
+    }
+
+    private static void benchmarkHistory(File dir, int size) {
+        List<String> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add((i % 2 == 0 ? "[2024-05-01 10:00:00] Q: " : "[2024-05-01 10:00:00] A: ")
+                    + "Entry " + i + " with \"quotes\", a\nnewline and some text to give it a realistic length.");
+        }
+
+        DataHandler writer = new DataHandler(dir);
+        Measurement save = measure(1, () -> writer.saveHistory(entries));
+        writer.closeHistory();
+
+        DataHandler reader = new DataHandler(dir);
+        AtomicReference<List<String>> history = new AtomicReference<>();
+        Measurement open = measure(1, () -> history.set(reader.loadHistory())).withWork(() -> history.get().size());
+        Measurement scan = measure(1, () -> {
+            long chars = 0;
+            for (String entry : history.get()) chars += entry.length();
+            if (chars == 0) throw new IllegalStateException();
+        });
+        Measurement append = measure(1000, () -> history.get().add("[2024-05-01 10:00:00] Q: one more"));
+        reader.closeHistory();
+
+        System.out.println("History, " + size + " entries");
+        save.print("saveHistory (compact)");
+        open.print("loadHistory (open)");
+        scan.print("iterate all entries");
+        append.print("append one entry");
+    }
+
+    // ============================
+    // Measurement helpers
+    // ============================
+    private static Measurement measure(int rounds, Runnable op) {
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) op.run();
+        long nanos = System.nanoTime() - start;
+        long bytes = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        return new Measurement(rounds, nanos, bytes);
+    }
+
+    private static class Measurement {
+        final int rounds;
+        long nanos;
+        long bytes;
+
+        Measurement(int rounds, long nanos, long bytes) {
+            this.rounds = rounds;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        // loadHistory() is lazy; fold the first size() call into the open cost
+        Measurement withWork(Runnable work) {
+            Measurement extra = measure(1, work);
+            nanos += extra.nanos;
+            bytes += extra.bytes;
+            return this;
+        }
+
+        void print(String label) {
+            System.out.printf("  %-24s %12.1f us/op %14s bytes/op%n",
+                    label, nanos / 1000.0 / rounds, String.format("%,d", bytes / rounds));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.*;
+
+/**
+ * Write-behind for DataHandler. Callers only record what changed (the latest
+ * profile, new history entries, the stats tracker) and return at once; a
+ * background thread writes it out. Once something is pending the thread
+ * waits a short commit window (STUDYMENTOR_COMMIT_WINDOW_MS, default 50) so
+ * that everything changed together is written together: one history write
+ * and one fsync for all new entries, and only the newest profile and stats.
+ *
+ * flush() waits until everything recorded so far is on disk. A shutdown hook
+ * drains the queue, so Ctrl+C does not lose writes already recorded. Stats
+ * are only recorded when the tracker is saved, so the application's own exit
+ * hook saves them before closing the DataHandler.
+ */
+class PersistenceWriter {
+    private static final long COMMIT_WINDOW_MS = longFromEnv("STUDYMENTOR_COMMIT_WINDOW_MS", 50);
+
+    private final DataHandler target;
+    private final Thread thread;
+    private final Thread shutdownHook;
+
+    // Guarded by this
+    private Profile profile;
+    private ProgressTracker stats;
+    private List<String> history = new ArrayList<>();
+    private long recorded;
+    private long written;
+    private boolean flushRequested;
+    private boolean closed;
+
+    PersistenceWriter(DataHandler target) {
+        this.target = target;
+        this.thread = new Thread(this::run, "persistence-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        this.shutdownHook = new Thread(this::flush, "persistence-drain");
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Created by a shutdown hook, which closes it before the JVM exits
+        }
+    }
+
+    synchronized void profile(Profile latest) {
+        profile = latest;
+        changed();
+    }
+
+    synchronized void history(Collection<String> entries) {
+        history.addAll(entries);
+        changed();
+    }
+
+    synchronized void stats(ProgressTracker tracker) {
+        stats = tracker;
+        changed();
+    }
+
+    private void changed() {
+        recorded++;
+        notifyAll();
+    }
+
+    /** Blocks until everything recorded before the call has been written. */
+    synchronized void flush() {
+        long target = recorded;
+        flushRequested = true;
+        notifyAll();
+        boolean interrupted = false;
+        while (written < target && thread.isAlive()) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /** Drains and stops the thread. */
+    void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down; the hook is running or has run
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Profile nextProfile;
+            ProgressTracker nextStats;
+            List<String> nextHistory;
+            long batch;
+            synchronized (this) {
+                try {
+                    while (recorded == written && !closed) wait();
+                    if (recorded == written) return;
+
+                    // Group commit: let whatever else changes in the window join this write
+                    long deadline = System.currentTimeMillis() + COMMIT_WINDOW_MS;
+                    long left;
+                    while (!flushRequested && !closed && (left = deadline - System.currentTimeMillis()) > 0) {
+                        wait(left);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                nextProfile = profile;
+                nextStats = stats;
+                nextHistory = history;
+                batch = recorded;
+                profile = null;
+                stats = null;
+                history = new ArrayList<>();
+                flushRequested = false;
+            }
+
+            if (!nextHistory.isEmpty()) target.writeHistory(nextHistory);
+            if (nextProfile != null) target.writeProfile(nextProfile);
+            if (nextStats != null) target.writeStats(nextStats);
+
+            synchronized (this) {
+                written = batch;
+                notifyAll();
+            }
+        }
+    }
+
+    private static long longFromEnv(String name, long fallback) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) return Long.parseLong(value.trim());
+        } catch (NumberFormatException ignored) {}
+        return fallback;
+    }
+}
@@ -9,7 +9,7 @@ public class Profile {
     private List<String> subjects;
     private String preferredAI;
    
-    public Profile(String name, String grade, String email, List<String> subjects, String preferredAI, String  response) {
+    public Profile(String name, String grade, String email, List<String> subjects, String preferredAI) {
         this.name = name;
         this.grade = grade;
         this.email = email;
@@ -1,66 +1,248 @@
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counts what students do, this session and overall. Counters are LongAdders
+ * and the per-subject / per-user tables are concurrent maps of them, so batch
+ * workers and server threads record without contending on a lock.
+ *
+ * Overall totals are restored from study_stats.json by loadStats() and written
+ * back by saveStats(); startSnapshots() also writes them periodically, but
+ * only when something was recorded since the last write. loadStats() also
+ * attaches the daily StudyTimeline, which keeps the per-day trends.
+ */
+public class ProgressTracker {
+    private static final long SNAPSHOT_SECONDS = longFromEnv("STUDYMENTOR_STATS_SNAPSHOT_SECONDS", 30);
+    // Keeps the tables (and study_stats.json) bounded when subjects are free text
+    private static final int MAX_KEYS = 10_000;
+    private static final int TREND_DAYS = 30;
 
+    // This session
+    private final LongAdder questionsAsked = new LongAdder();
+    private final LongAdder studyPlansCreated = new LongAdder();
+    private final LongAdder motivationSessions = new LongAdder();
 
+    // Earlier sessions, as restored by loadStats()
+    private volatile long previousSessions;
+    private volatile long previousQuestions;
+    private volatile long previousStudyPlans;
+    private volatile long previousMotivation;
 
+    // Overall activity per subject and per user, restored counts included
+    private final ConcurrentHashMap<String, LongAdder> subjects = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> users = new ConcurrentHashMap<>();
 
+    // Null for trackers that were never loaded, such as per-session ones
+    private volatile StudyTimeline timeline;
+
+    private final LongAdder changes = new LongAdder();
+    private long savedChanges;
+    private ScheduledFuture<?> snapshots;
+
+    private static final ScheduledExecutorService SNAPSHOTS = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread t = new Thread(task, "stats-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
 
-public class ProgressTracker {
-    private int questionsAsked;
-    private int studyPlansCreated;
-    private int motivationSessions;
-    private int totalSessions;
-    private int totalQuestions;
-    
-    public ProgressTracker() {
-        this.questionsAsked = 0;
-        this.studyPlansCreated = 0;
-        this.motivationSessions = 0;
-        this.totalSessions = 1;
-        this.totalQuestions = 0;
-    }
-    
     public void recordQuestion() {
-        questionsAsked++;
-        totalQuestions++;
+        recordQuestion(null, null);
     }
-    
+
+    /** user and subject may be null when unknown. */
+    public void recordQuestion(String user, String subject) {
+        questionsAsked.increment();
+        count(user, subject);
+        daily(StudyTimeline.Kind.QUESTION, subject);
+    }
+
     public void recordStudyPlan() {
-        studyPlansCreated++;
+        recordStudyPlan(null, null);
     }
-    
+
+    public void recordStudyPlan(String user, String subject) {
+        studyPlansCreated.increment();
+        count(user, subject);
+        daily(StudyTimeline.Kind.STUDY_PLAN, subject);
+    }
+
     public void recordMotivation() {
-        motivationSessions++;
+        recordMotivation(null);
+    }
+
+    public void recordMotivation(String user) {
+        motivationSessions.increment();
+        count(user, null);
+        daily(StudyTimeline.Kind.MOTIVATION, null);
+    }
+
+    private void count(String user, String subject) {
+        if (subject != null && !subject.isBlank()) increment(subjects, key(subject));
+        if (user != null && !user.isBlank()) increment(users, user.trim());
+        changes.increment();
     }
-    
+
+    private void daily(StudyTimeline.Kind kind, String subject) {
+        StudyTimeline days = timeline;
+        if (days != null) days.record(kind, subject);
+    }
+
+    private static void increment(ConcurrentHashMap<String, LongAdder> counts, String key) {
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= MAX_KEYS) return;
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private static String key(String subject) {
+        return subject.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** The first of the student's subjects that the text mentions, or null. */
+    public static String subjectOf(String text, List<String> subjects) {
+        if (text == null || subjects == null) return null;
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (String subject : subjects) {
+            if (!subject.isBlank() && lower.contains(subject.trim().toLowerCase(Locale.ROOT))) return subject.trim();
+        }
+        return null;
+    }
+
+    // ============================
+    // Persistence
+    // ============================
     public void loadStats(DataHandler dataHandler) {
-        // Stats are loaded from file if exists
-        // For simplicity, we'll keep session-based tracking
+        dataHandler.loadStats(this);
+        timeline = dataHandler.timeline();
     }
-    
+
     public void saveStats(DataHandler dataHandler) {
+        long pending = changes.sum();
         dataHandler.saveStats(this);
+        synchronized (this) {
+            savedChanges = Math.max(savedChanges, pending);
+        }
     }
-    
+
+    /** Called by DataHandler with the totals of earlier sessions. */
+    void restore(long sessions, long questions, long studyPlans, long motivation,
+                 Map<String, Long> subjectCounts, Map<String, Long> userCounts) {
+        previousSessions = sessions;
+        previousQuestions = questions;
+        previousStudyPlans = studyPlans;
+        previousMotivation = motivation;
+        subjectCounts.forEach((subject, n) -> subjects.computeIfAbsent(key(subject), k -> new LongAdder()).add(n));
+        userCounts.forEach((user, n) -> users.computeIfAbsent(user, k -> new LongAdder()).add(n));
+    }
+
+    /** Saves every STUDYMENTOR_STATS_SNAPSHOT_SECONDS (default 30) while there is something new. */
+    public synchronized void startSnapshots(DataHandler dataHandler) {
+        if (snapshots != null || SNAPSHOT_SECONDS <= 0) return;
+        snapshots = SNAPSHOTS.scheduleWithFixedDelay(() -> {
+            boolean dirty;
+            synchronized (this) {
+                dirty = changes.sum() != savedChanges;
+            }
+            if (dirty) saveStats(dataHandler);
+        }, SNAPSHOT_SECONDS, SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopSnapshots() {
+        if (snapshots != null) snapshots.cancel(false);
+        snapshots = null;
+    }
+
+    // ============================
+    // Display
+    // ============================
     public void displayStatistics() {
         System.out.println(Colors.YELLOW + "\n📊 Current Session:" + Colors.RESET);
-        System.out.println("   Questions Asked: " + questionsAsked);
-        System.out.println("   Study Plans: " + studyPlansCreated);
-        System.out.println("   Motivation Sessions: " + motivationSessions);
-        
+        System.out.println("   Questions Asked: " + getQuestionsAsked());
+        System.out.println("   Study Plans: " + getStudyPlansCreated());
+        System.out.println("   Motivation Sessions: " + getMotivationSessions());
+
+        long totalSessions = getTotalSessions();
+        long totalQuestions = getTotalQuestions();
         System.out.println(Colors.YELLOW + "\n📈 Overall Statistics:" + Colors.RESET);
         System.out.println("   Total Sessions: " + totalSessions);
         System.out.println("   Total Questions: " + totalQuestions);
+        System.out.println("   Total Study Plans: " + getTotalStudyPlans());
         if (totalSessions > 0) {
             System.out.println("   Avg Questions/Session: " + (totalQuestions / totalSessions));
         }
+
+        displayTrends();
+
+        Map<String, Long> bySubject = getSubjectCounts();
+        if (!bySubject.isEmpty()) {
+            System.out.println(Colors.YELLOW + "\n📚 By Subject:" + Colors.RESET);
+            bySubject.entrySet().stream().limit(5)
+                    .forEach(e -> System.out.println("   " + e.getKey() + ": " + e.getValue()));
+        }
+        Map<String, Long> byUser = getUserCounts();
+        if (byUser.size() > 1) {
+            System.out.println(Colors.YELLOW + "\n👥 By Student:" + Colors.RESET);
+            byUser.entrySet().stream().limit(5)
+                    .forEach(e -> System.out.println("   " + e.getKey() + ": " + e.getValue()));
+        }
+    }
+
+    private void displayTrends() {
+        StudyTimeline days = timeline;
+        if (days == null) return;
+        int[] questions = days.perDay(StudyTimeline.Kind.QUESTION, TREND_DAYS);
+        int[] plans = days.perDay(StudyTimeline.Kind.STUDY_PLAN, TREND_DAYS);
+        System.out.println(Colors.YELLOW + "\n📅 Last " + TREND_DAYS + " Days:" + Colors.RESET);
+        System.out.println("   Questions   |" + StudyTimeline.sparkline(questions) + "| "
+                + StudyTimeline.sum(questions, 0, TREND_DAYS) + " (" + StudyTimeline.weekTrend(questions) + ")");
+        System.out.println("   Study Plans |" + StudyTimeline.sparkline(plans) + "| "
+                + StudyTimeline.sum(plans, 0, TREND_DAYS) + " (" + StudyTimeline.weekTrend(plans) + ")");
     }
-    
+
+    /** The daily activity store, or null before loadStats(). */
+    public StudyTimeline getTimeline() { return timeline; }
+
     // Getters
-    public int getQuestionsAsked() { return questionsAsked; }
-    public int getStudyPlansCreated() { return studyPlansCreated; }
-    public int getMotivationSessions() { return motivationSessions; }
-    public int getTotalSessions() { return totalSessions; }
-    public int getTotalQuestions() { return totalQuestions; }
-}
+    public int getQuestionsAsked() { return questionsAsked.intValue(); }
+    public int getStudyPlansCreated() { return studyPlansCreated.intValue(); }
+    public int getMotivationSessions() { return motivationSessions.intValue(); }
+    public int getTotalSessions() { return (int) (previousSessions + 1); }
+    public int getTotalQuestions() { return (int) (previousQuestions + questionsAsked.sum()); }
+    public int getTotalStudyPlans() { return (int) (previousStudyPlans + studyPlansCreated.sum()); }
+    public int getTotalMotivationSessions() { return (int) (previousMotivation + motivationSessions.sum()); }
+
+    /** Overall counts per subject, most active first. */
+    public Map<String, Long> getSubjectCounts() {
+        return sorted(subjects);
+    }
+
+    /** Overall counts per user, most active first. */
+    public Map<String, Long> getUserCounts() {
+        return sorted(users);
+    }
 
+    public long getUserCount(String user) {
+        LongAdder count = users.get(user);
+        return count == null ? 0 : count.sum();
+    }
+
+    private static Map<String, Long> sorted(Map<String, LongAdder> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        counts.forEach((k, v) -> entries.add(Map.entry(k, v.sum())));
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : entries) result.put(e.getKey(), e.getValue());
+        return result;
+    }
+
+    private static long longFromEnv(String name, long fallback) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) return Long.parseLong(value.trim());
+        } catch (NumberFormatException ignored) {}
+        return fallback;
+    }
+}
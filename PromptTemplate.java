@@ -0,0 +1,94 @@
+import java.util.*;
+
+/**
+ * A prompt with {{placeholders}}, compiled once into alternating literal and
+ * placeholder segments. Rendering walks the segments into a per-thread
+ * buffer that is reused between calls, so no parsing or regex work happens
+ * per prompt.
+ *
+ * hash() identifies the template text, so a cache or de-duplication layer can
+ * key on (hash, values) and notice when a template is edited; key() builds
+ * that key.
+ */
+public final class PromptTemplate {
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private final String name;
+    private final String source;
+    private final String hash;
+    private final String[] literals;   // literals.length == names.length + 1
+    private final String[] names;
+    private final int literalLength;
+
+    private PromptTemplate(String name, String source, String[] literals, String[] names) {
+        this.name = name;
+        this.source = source;
+        this.hash = AnswerCache.sha256(name + "\n" + source).substring(0, 16);
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.literalLength = length;
+    }
+
+    public static PromptTemplate compile(String name, String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = source.indexOf("{{", position);
+            int close = open < 0 ? -1 : source.indexOf("}}", open + 2);
+            if (close < 0) {
+                literals.add(source.substring(position));
+                break;
+            }
+            literals.add(source.substring(position, open));
+            names.add(source.substring(open + 2, close).trim());
+            position = close + 2;
+        }
+        return new PromptTemplate(name, source, literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    /** Fills in the placeholders; a missing value renders as empty text. */
+    public String render(Map<String, String> values) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        out.ensureCapacity(literalLength + 32 * names.length);
+
+        out.append(literals[0]);
+        for (int i = 0; i < names.length; i++) {
+            String value = values.get(names[i]);
+            if (value != null) out.append(value);
+            out.append(literals[i + 1]);
+        }
+        String prompt = out.toString();
+
+        if (out.capacity() > MAX_RETAINED_BUFFER) BUFFER.remove();
+        return prompt;
+    }
+
+    public String getName() { return name; }
+    public String getSource() { return source; }
+
+    /** Stable across runs and JVMs; changes whenever the template text does. */
+    public String hash() { return hash; }
+
+    /**
+     * hash() plus the placeholder values in order, each prefixed with its
+     * length so no value can run into the next: "template:explain@<hash>|5:Cells|4:ELI5".
+     */
+    public String key(Map<String, String> values) {
+        StringBuilder key = new StringBuilder(64).append("template:").append(name).append('@').append(hash);
+        for (String placeholder : names) {
+            String value = values.getOrDefault(placeholder, "");
+            key.append('|').append(value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    /** Placeholder names in order of appearance (repeats included). */
+    public List<String> placeholders() {
+        return List.of(names);
+    }
+}
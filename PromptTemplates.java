@@ -0,0 +1,90 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The prompts StudyMentor sends, by name. Each one has a built-in default and
+ * can be overridden by a `<name>.txt` file in the prompts directory
+ * (STUDYMENTOR_PROMPTS_DIR, default ./prompts). Edited files are picked up
+ * without a restart: get() re-checks a file's timestamp at most once a second
+ * and recompiles only when it changed.
+ */
+public class PromptTemplates {
+    public static final String STUDY_PLAN = "study_plan";
+    public static final String EXPLAIN = "explain";
+    public static final String MOTIVATION = "motivation";
+
+    private static final long RELOAD_CHECK_MS = 1000;
+
+    private static final Map<String, String> DEFAULTS = Map.of(
+            STUDY_PLAN, """
+                    Create a {{days}}-day study plan for {{subject}}.
+                    Level: {{level}}
+                    Daily time: {{hours}} hours
+                    Include daily goals, topics, and weekly review.
+                    """,
+            EXPLAIN, "Explain {{concept}} in a {{style}} style.",
+            MOTIVATION, "Give motivational study tips.");
+
+    private static final class Loaded {
+        final PromptTemplate template;
+        final long lastModified;
+        final long checkedAt;
+
+        Loaded(PromptTemplate template, long lastModified, long checkedAt) {
+            this.template = template;
+            this.lastModified = lastModified;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private final File dir;
+    private final ConcurrentHashMap<String, Loaded> loaded = new ConcurrentHashMap<>();
+
+    public PromptTemplates(File dir) {
+        this.dir = dir;
+    }
+
+    public static PromptTemplates fromEnvironment() {
+        String dir = System.getenv("STUDYMENTOR_PROMPTS_DIR");
+        return new PromptTemplates(new File(dir == null || dir.isBlank() ? "prompts" : dir));
+    }
+
+    public PromptTemplate get(String name) {
+        long now = System.currentTimeMillis();
+        Loaded current = loaded.get(name);
+        if (current != null && now - current.checkedAt < RELOAD_CHECK_MS) {
+            return current.template;
+        }
+        return loaded.compute(name, (n, previous) -> reload(n, previous, now)).template;
+    }
+
+    public String render(String name, Map<String, String> values) {
+        return get(name).render(values);
+    }
+
+    // lastModified 0 means "using the built-in default"
+    private Loaded reload(String name, Loaded previous, long now) {
+        File file = new File(dir, name + ".txt");
+        long modified = file.isFile() ? file.lastModified() : 0;
+        if (previous != null && previous.lastModified == modified) {
+            return new Loaded(previous.template, modified, now);
+        }
+
+        if (modified != 0) {
+            try {
+                String source = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+                return new Loaded(PromptTemplate.compile(name, source), modified, now);
+            } catch (IOException e) {
+                System.err.println("Error loading prompt template " + file + ": " + e.getMessage());
+                if (previous != null) return new Loaded(previous.template, previous.lastModified, now);
+            }
+        }
+
+        String source = DEFAULTS.get(name);
+        if (source == null) throw new IllegalArgumentException("Unknown prompt template: " + name);
+        return new Loaded(PromptTemplate.compile(name, source), 0, now);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client-side flow control shared by every request that uses the same API
+ * key: a pause that makes all of them honour a 429's Retry-After instead of
+ * each finding out on its own, and optionally a token bucket for keys whose
+ * quota is known. Each endpoint also has one circuit breaker, shared by all
+ * its keys.
+ *
+ * STUDYMENTOR_RATE_LIMIT sets requests/second per key (default 0: no bucket,
+ * the provider's 429s set the pace); STUDYMENTOR_BREAKER_FAILURES and
+ * STUDYMENTOR_BREAKER_OPEN_MS tune the breaker.
+ */
+public class RequestGuard {
+    private static volatile double rateLimit = doubleFromEnv("STUDYMENTOR_RATE_LIMIT", 0);
+    static final int BREAKER_FAILURES = (int) doubleFromEnv("STUDYMENTOR_BREAKER_FAILURES", 5);
+    static final long BREAKER_OPEN_MS = (long) doubleFromEnv("STUDYMENTOR_BREAKER_OPEN_MS", 30000);
+
+    private static final ConcurrentHashMap<String, RequestGuard> GUARDS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String label;
+    private final TokenBucket bucket;
+    private final CircuitBreaker breaker;
+    private volatile long pausedUntil;
+
+    private RequestGuard(String label, CircuitBreaker breaker) {
+        this.label = label;
+        double rate = rateLimit;
+        this.bucket = rate > 0 ? new TokenBucket(rate, Math.max(1, rate)) : null;
+        this.breaker = breaker;
+    }
+
+    public static RequestGuard forKey(String provider, String endpoint, String apiKey) {
+        CircuitBreaker breaker = BREAKERS.computeIfAbsent(endpoint,
+                e -> new CircuitBreaker(BREAKER_FAILURES, BREAKER_OPEN_MS));
+        return GUARDS.computeIfAbsent(provider.toLowerCase() + "|" + endpoint + "|" + apiKey,
+                k -> new RequestGuard(provider, breaker));
+    }
+
+    /**
+     * Requests/second per key for keys first used after the call; 0 turns the
+     * bucket off. Lets the latency tools measure the transport, not the limiter.
+     */
+    static void setRateLimit(double perSecond) {
+        rateLimit = perSecond;
+    }
+
+    /**
+     * Waits until this key may send another request. Fails straight away
+     * while the endpoint's breaker is open.
+     */
+    public void acquire() throws Exception {
+        if (!breaker.allowRequest()) {
+            throw new CircuitBreaker.OpenException(label + " is failing repeatedly; not retrying for another "
+                    + (breaker.millisUntilTrial() + 999) / 1000 + " s");
+        }
+        try {
+            long wait;
+            while ((wait = pausedUntil - System.currentTimeMillis()) > 0) {
+                Thread.sleep(wait);
+            }
+            if (bucket != null) bucket.acquire();
+        } catch (InterruptedException e) {
+            breaker.recordAbandoned();
+            throw e;
+        }
+    }
+
+    /** Holds back every request on this key for the given time. */
+    public void pause(long millis) {
+        long until = System.currentTimeMillis() + millis;
+        synchronized (this) {
+            if (until > pausedUntil) pausedUntil = until;
+        }
+    }
+
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    private static double doubleFromEnv(String name, double fallback) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
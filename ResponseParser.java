@@ -0,0 +1,181 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.*;
+
+/**
+ * Pulls the answer text out of OpenAI and Gemini responses in a single pass
+ * over the stream. Only the answer string itself is materialised; everything
+ * else is skipped token by token, and escapes (including unicode escapes)
+ * are decoded by JsonReader as it goes.
+ *
+ * The whole document is always consumed so the HTTP connection can be reused.
+ * When a Usage is passed, the token counts the provider reports are copied
+ * into it on the way past.
+ */
+public final class ResponseParser {
+
+    /** Reads one JSON document and returns its answer text, or null if none. */
+    public interface Extractor {
+        String extract(Reader in, Usage usage) throws IOException;
+    }
+
+    /** Token counts from the response; -1 until the provider reports them. */
+    public static final class Usage {
+        public int promptTokens = -1;
+        public int completionTokens = -1;
+    }
+
+    public static final Extractor OPENAI = ResponseParser::openAIContent;
+    public static final Extractor GEMINI = ResponseParser::geminiText;
+
+    private ResponseParser() {}
+
+    public static String openAIContent(Reader in) throws IOException {
+        return openAIContent(in, null);
+    }
+
+    /**
+     * choices[0].message.content, or choices[0].delta.content for stream
+     * chunks; usage.prompt_tokens / completion_tokens go into usage.
+     */
+    public static String openAIContent(Reader in, Usage usage) throws IOException {
+        String content = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals("usage") && usage != null && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readUsage(reader, usage, "prompt_tokens", "completion_tokens");
+                    continue;
+                }
+                if (!field.equals("choices") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (i > 0 || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ((name.equals("message") || name.equals("delta"))
+                                && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            content = stringField(reader, "content");
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        return content;
+    }
+
+    public static String geminiText(Reader in) throws IOException {
+        return geminiText(in, null);
+    }
+
+    /**
+     * candidates[0].content.parts[*].text, concatenated; usageMetadata
+     * promptTokenCount / candidatesTokenCount go into usage.
+     */
+    public static String geminiText(Reader in, Usage usage) throws IOException {
+        StringBuilder text = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals("usageMetadata") && usage != null && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readUsage(reader, usage, "promptTokenCount", "candidatesTokenCount");
+                    continue;
+                }
+                if (!field.equals("candidates") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (i > 0 || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (!reader.nextName().equals("content") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (!reader.nextName().equals("parts") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                String part = reader.peek() == JsonToken.BEGIN_OBJECT
+                                        ? stringField(reader, "text")
+                                        : skip(reader);
+                                if (part != null) {
+                                    if (text == null) text = new StringBuilder(part.length());
+                                    text.append(part);
+                                }
+                            }
+                            reader.endArray();
+                        }
+                        reader.endObject();
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        return text == null ? null : text.toString();
+    }
+
+    // Reads the object at the cursor, returning the string value of one field
+    private static String stringField(JsonReader reader, String field) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field) && reader.peek() == JsonToken.STRING) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    // Stream chunks repeat the counts so far, so later values replace earlier ones
+    private static void readUsage(JsonReader reader, Usage usage, String prompt, String completion)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.NUMBER) {
+                reader.skipValue();
+            } else if (name.equals(prompt)) {
+                usage.promptTokens = reader.nextInt();
+            } else if (name.equals(completion)) {
+                usage.completionTokens = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static String skip(JsonReader reader) throws IOException {
+        reader.skipValue();
+        return null;
+    }
+}
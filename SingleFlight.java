@@ -0,0 +1,146 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces identical requests that are in flight at the same time: the first
+ * caller for a key starts the upstream call, later callers with the same key
+ * wait for that call instead of starting their own, and everyone gets the
+ * same answer (or the same error).
+ *
+ * The call runs on its own task rather than on the first caller's thread, so
+ * one caller giving up does not fail the others; it is cancelled only when
+ * every waiter has gone. Streaming waiters that join late are first handed
+ * the tokens produced so far. If the call was made without streaming, the
+ * streaming waiters get the whole answer as one token at the end.
+ */
+public class SingleFlight {
+
+    /** The upstream call; tokens is null when the first caller did not stream. */
+    public interface Call {
+        String call(Consumer<String> tokens) throws Exception;
+    }
+
+    private final class Flight {
+        final String key;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final List<String> tokens = new ArrayList<>();
+        final List<Consumer<String>> subscribers = new ArrayList<>();
+        int waiters;
+        boolean abandoned;
+        String answer;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        synchronized boolean join(Consumer<String> onToken) {
+            if (abandoned) return false;
+            waiters++;
+            if (onToken != null) {
+                for (String token : tokens) onToken.accept(token);
+                if (answer == null) {
+                    subscribers.add(onToken);
+                } else if (tokens.isEmpty()) {
+                    onToken.accept(answer);
+                }
+            }
+            return true;
+        }
+
+        synchronized void publish(String token) {
+            tokens.add(token);
+            for (Consumer<String> subscriber : subscribers) subscriber.accept(token);
+        }
+
+        synchronized void finish(String answer) {
+            this.answer = answer;
+            if (tokens.isEmpty()) {
+                for (Consumer<String> subscriber : subscribers) subscriber.accept(answer);
+            }
+            subscribers.clear();
+            result.complete(answer);
+        }
+
+        // The last waiter to leave cancels the call
+        void leave(Consumer<String> onToken) {
+            synchronized (this) {
+                subscribers.remove(onToken);
+                if (--waiters > 0 || result.isDone()) return;
+                abandoned = true;
+            }
+            result.cancel(true);
+            flights.remove(key, this);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SingleFlight(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the answer for key, joining a call already in flight for it or
+     * starting one. Interrupting the caller only withdraws this caller.
+     */
+    public String run(String key, Consumer<String> onToken, Call call) throws Exception {
+        boolean[] started = {false};
+        Flight flight = flights.compute(key, (k, current) -> {
+            if (current != null && current.join(onToken)) return current;
+            Flight fresh = new Flight(k);
+            fresh.join(onToken);
+            started[0] = true;
+            return fresh;
+        });
+        if (started[0]) {
+            calls.incrementAndGet();
+            start(flight, onToken != null, call);
+        } else {
+            coalesced.incrementAndGet();
+        }
+
+        try {
+            return flight.result.get();
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        } catch (InterruptedException e) {
+            flight.leave(onToken);
+            throw e;
+        }
+    }
+
+    private void start(Flight flight, boolean streaming, Call call) {
+        Future<?> task = executor.submit(() -> {
+            try {
+                String answer = call.call(streaming ? flight::publish : null);
+                flight.finish(answer);
+            } catch (Throwable e) {
+                flight.result.completeExceptionally(e);
+            } finally {
+                flights.remove(flight.key, flight);
+            }
+        });
+        flight.result.whenComplete((answer, error) -> {
+            if (flight.result.isCancelled()) task.cancel(true);
+        });
+    }
+
+    /** Upstream calls actually made. */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /** Requests that were answered by joining another request's call. */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public int getInFlightCount() {
+        return flights.size();
+    }
+}
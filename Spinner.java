@@ -0,0 +1,47 @@
+/**
+ * Console progress spinner shown while an AI request is in flight.
+ * stop() clears the spinner line and is safe to call more than once.
+ */
+public class Spinner {
+    private static final String[] FRAMES = {"⠋", "⠙", "⠹", "⠸", "⠼", "⠴", "⠦", "⠧", "⠇", "⠏"};
+
+    private final String message;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private Spinner(String message) {
+        this.message = message;
+        this.thread = new Thread(this::spin, "spinner");
+        this.thread.setDaemon(true);
+    }
+
+    public static Spinner start(String message) {
+        Spinner spinner = new Spinner(message);
+        spinner.thread.start();
+        return spinner;
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        thread.interrupt();
+        System.out.print("\r" + " ".repeat(message.length() + 4) + "\r");
+        System.out.flush();
+    }
+
+    private void spin() {
+        int frame = 0;
+        while (running) {
+            synchronized (this) {
+                if (!running) break;
+                System.out.print("\r" + Colors.YELLOW + FRAMES[frame++ % FRAMES.length] + " " + message + Colors.RESET);
+                System.out.flush();
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+}
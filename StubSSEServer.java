@@ -0,0 +1,220 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the OpenAI and Gemini endpoints so streaming can be
+ * tried without network access or API keys.
+ *
+ *   java StubSSEServer            -> serve on port 8089 until killed
+ *   java StubSSEServer 9000       -> serve on another port
+ *   java StubSSEServer --demo     -> start, stream one answer from each provider, exit
+ *   java StubSSEServer 8089 --fail 3:429
+ *                                 -> answer the first 3 requests with 429 (Retry-After: 1)
+ *
+ * Point StudyMentor at it with OPENAI_BASE_URL=http://localhost:8089/v1
+ * or GEMINI_BASE_URL=http://localhost:8089/v1beta (any non-empty key works).
+ */
+public class StubSSEServer {
+    private static final int DEFAULT_PORT = 8089;
+    private static final long TOKEN_DELAY_MS = 40;
+    private static final String ANSWER =
+            "Spaced repetition works because each review happens just before you would forget. "
+            + "Start with short daily sessions, mix \"hard\" topics with easy ones, "
+            + "and test yourself instead of re-reading.";
+
+    // Injected failures, used to exercise retries and the circuit breaker
+    private static final AtomicInteger failuresLeft = new AtomicInteger();
+    private static volatile int failureStatus = 503;
+
+    public static void main(String[] args) throws Exception {
+        boolean demo = args.length > 0 && args[0].equals("--demo");
+        int port = (!demo && args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        if (args.length > 2 && args[1].equals("--fail")) {
+            String[] spec = args[2].split(":");
+            failNext(Integer.parseInt(spec[0]), spec.length > 1 ? Integer.parseInt(spec[1]) : 503);
+        }
+
+        HttpServer server = start(port);
+        System.out.println("Stub SSE server listening on http://localhost:" + port);
+        System.out.println("  OPENAI_BASE_URL=http://localhost:" + port + "/v1");
+        System.out.println("  GEMINI_BASE_URL=http://localhost:" + port + "/v1beta");
+
+        if (demo) {
+            try {
+                runDemo("OpenAI", "http://localhost:" + port + "/v1");
+                runDemo("Gemini", "http://localhost:" + port + "/v1beta");
+            } finally {
+                server.stop(0);
+            }
+        }
+    }
+
+    public static HttpServer start(int port) throws IOException {
+        // Without TCP_NODELAY, keep-alive clients hit a 40 ms delayed-ACK stall per response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/v1/chat/completions", StubSSEServer::handleOpenAI);
+        server.createContext("/v1/models/", StubSSEServer::handleModel);
+        server.createContext("/v1beta/models/", StubSSEServer::handleGemini);
+        server.start();
+        return server;
+    }
+
+    /** Makes the next count requests fail with the given status (429 also sends Retry-After: 1). */
+    public static void failNext(int count, int status) {
+        failureStatus = status;
+        failuresLeft.set(count);
+    }
+
+    // Sends the injected failure, if any is left; returns true when it did
+    private static boolean failed(HttpExchange exchange) throws IOException {
+        if (failuresLeft.getAndUpdate(n -> Math.max(0, n - 1)) <= 0) return false;
+
+        readBody(exchange);
+        byte[] bytes = ("{\"error\":{\"code\":" + failureStatus + ",\"message\":\"injected failure\"}}")
+                .getBytes(StandardCharsets.UTF_8);
+        if (failureStatus == 429) exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(failureStatus, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        return true;
+    }
+
+    private static void runDemo(String provider, String baseUrl) throws Exception {
+        AIProvider ai = new AIProvider(provider, "stub-key", baseUrl);
+        long start = System.nanoTime();
+        long[] firstToken = {0};
+
+        System.out.println("\n" + provider + " (streaming):");
+        String answer = ai.askQuestionStreaming("How should I revise?", token -> {
+            if (firstToken[0] == 0) firstToken[0] = System.nanoTime();
+            System.out.print(token);
+            System.out.flush();
+        });
+        long end = System.nanoTime();
+
+        System.out.println();
+        System.out.println("  time to first token: " + (firstToken[0] - start) / 1_000_000 + " ms");
+        System.out.println("  total time:          " + (end - start) / 1_000_000 + " ms");
+        System.out.println("  characters:          " + answer.length());
+    }
+
+    // ============================
+    // OpenAI chat completions
+    // ============================
+    private static void handleOpenAI(HttpExchange exchange) throws IOException {
+        if (failed(exchange)) return;
+        String body = readBody(exchange);
+        if (!body.replace(" ", "").contains("\"stream\":true")) {
+            String json = "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+                    + escape(ANSWER) + "\"},\"finish_reason\":\"stop\"}]," + openAIUsage(body) + "}";
+            sendJson(exchange, json);
+            return;
+        }
+
+        try (OutputStream out = beginEventStream(exchange)) {
+            for (String token : tokens()) {
+                sendEvent(out, "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + escape(token) + "\"}}]}");
+            }
+            if (body.contains("\"include_usage\"")) sendEvent(out, "{\"choices\":[]," + openAIUsage(body) + "}");
+            sendEvent(out, "[DONE]");
+        }
+    }
+
+    // ============================
+    // Gemini generateContent / streamGenerateContent
+    // ============================
+    private static void handleGemini(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("GET")) {
+            handleModel(exchange);
+            return;
+        }
+        if (failed(exchange)) return;
+        String body = readBody(exchange);
+        String path = exchange.getRequestURI().getPath();
+        if (!path.endsWith(":streamGenerateContent")) {
+            sendJson(exchange, geminiChunk(ANSWER, body, tokens().length));
+            return;
+        }
+
+        String[] tokens = tokens();
+        try (OutputStream out = beginEventStream(exchange)) {
+            for (int i = 0; i < tokens.length; i++) {
+                sendEvent(out, geminiChunk(tokens[i], body, i + 1));
+            }
+        }
+    }
+
+    // Gemini repeats the running token counts in every chunk
+    private static String geminiChunk(String text, String request, int completionTokens) {
+        return "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + escape(text)
+                + "\"}],\"role\":\"model\"}}],\"usageMetadata\":{\"promptTokenCount\":"
+                + TokenEstimator.estimate(request) + ",\"candidatesTokenCount\":" + completionTokens + "}}";
+    }
+
+    // Token counts are estimates; the stub has no real tokenizer
+    private static String openAIUsage(String request) {
+        return "\"usage\":{\"prompt_tokens\":" + TokenEstimator.estimate(request)
+                + ",\"completion_tokens\":" + tokens().length + "}";
+    }
+
+    // ============================
+    // Model lookups (GET /models/{model}), used by the key pool's re-probes
+    // ============================
+    // Injected failures are left for the AI requests
+    private static void handleModel(HttpExchange exchange) throws IOException {
+        readBody(exchange);
+        String path = exchange.getRequestURI().getPath();
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        sendJson(exchange, "{\"id\":\"" + escape(name) + "\",\"name\":\"models/" + escape(name) + "\"}");
+    }
+
+    // ============================
+    // HTTP helpers
+    // ============================
+    private static String[] tokens() {
+        return ANSWER.split("(?<= )");
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static OutputStream beginEventStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private static void sendEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        try {
+            Thread.sleep(TOKEN_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String escape(String str) {
+        return str.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -2,6 +2,7 @@ import java.util.*;
 import java.io.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.*;
 
 
 
@@ -16,6 +17,15 @@ public class StudyMentor {
     private static Profile profile; // FIXED: added missing profile variable
     private static String currentAIProvider = "OpenAI"; 
     private static List<String> conversationHistory;
+    private static LocalAnswers localAnswers;
+    private static AnswerCache answerCache =
+            new AnswerCache(500, Duration.ofDays(7), new File("study_cache"));
+    // Recent questions and answers of this session, sent with each new question
+    private static ConversationContext conversation = new ConversationContext();
+    // Prompt texts, overridable from the prompts directory
+    private static PromptTemplates prompts = PromptTemplates.fromEnvironment();
+    // Set once stats are saved and the data files closed, by exit or the shutdown hook
+    private static boolean closed;
 
     public static void main(String[] args) {
        
@@ -23,6 +33,16 @@ public class StudyMentor {
         scanner = new Scanner(System.in);
         dataHandler = new DataHandler();
         conversationHistory = dataHandler.loadHistory();
+        localAnswers = new LocalAnswers(dataHandler);
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
 
         System.out.println("\n" + Colors.BLUE + "═══════════════════════════════════════════════════════════════");
         System.out.println(Colors.CYAN + "🎓 Welcome to StudyMentor - Your AI-Powered Study Assistant!");
@@ -38,6 +58,8 @@ public class StudyMentor {
 
         progressTracker = new ProgressTracker();
         progressTracker.loadStats(dataHandler);
+        progressTracker.startSnapshots(dataHandler);
+        saveOnShutdown();
 
         initializeAIProvider();
 
@@ -57,6 +79,7 @@ public class StudyMentor {
                 case 7 -> exportHistory();
                 case 8 -> changeAIProvider();
                 case 9 -> viewStatistics();
+                case 10 -> searchHistory();
                 case 0 -> {
                     System.out.println(Colors.YELLOW + "\n👋 Thanks for using StudyMentor! Keep studying!" + Colors.RESET);
                     running = false;
@@ -66,13 +89,135 @@ public class StudyMentor {
         }
 
         dataHandler.saveProfile(profile);
-        progressTracker.saveStats(dataHandler);
+        saveAndClose();
         scanner.close();
     }
 
+    // Ctrl+C skips the end of main and runBatch, and stats are only queued
+    // for writing when saved, so the hook saves them before the drain
+    private static void saveOnShutdown() {
+        Runtime.getRuntime().addShutdownHook(new Thread(StudyMentor::saveAndClose, "save-on-exit"));
+    }
+
+    // Saves the stats and finishes every pending write; only the first call does anything
+    private static synchronized void saveAndClose() {
+        if (closed) return;
+        closed = true;
+        progressTracker.stopSnapshots();
+        progressTracker.saveStats(dataHandler);
+        dataHandler.closeHistory();
+    }
+
+
+    // ============================
+    // Batch mode
+    // ============================
+    // java StudyMentor --batch questions.txt [--out answers.jsonl] [--parallel 4] [--rate 2]
+    private static void runBatch(String[] args) {
+        File input = null;
+        File output = null;
+        int parallel = 4;
+        double rate = 0;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> output = new File(args[++i]);
+                    case "--parallel" -> parallel = Integer.parseInt(args[++i]);
+                    case "--rate" -> rate = Double.parseDouble(args[++i]);
+                    default -> input = new File(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            input = null;
+        }
+        if (input == null) {
+            System.out.println(Colors.RED + "Usage: java StudyMentor --batch <questions.txt|.jsonl> "
+                    + "[--out answers.jsonl] [--parallel N] [--rate questions-per-second]" + Colors.RESET);
+            return;
+        }
+        if (output == null) {
+            output = new File("batch_answers_" +
+                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".jsonl");
+        }
+
+        profile = dataHandler.loadProfile();
+        if (profile != null) currentAIProvider = profile.getPreferredAI();
+        progressTracker = new ProgressTracker();
+        progressTracker.loadStats(dataHandler);
+        progressTracker.startSnapshots(dataHandler);
+        saveOnShutdown();
+
+        initializeAIProvider();
+        if (!aiProvider.isAvailable()) return;
+
+        // Requests past the provider's in-flight limit would only queue on it
+        if (parallel > AIProvider.MAX_IN_FLIGHT) {
+            System.out.println(Colors.YELLOW + "⚠️ --parallel " + parallel + " is above STUDYMENTOR_MAX_IN_FLIGHT ("
+                    + AIProvider.MAX_IN_FLIGHT + "), using " + AIProvider.MAX_IN_FLIGHT + Colors.RESET);
+            parallel = AIProvider.MAX_IN_FLIGHT;
+        }
+
+        try {
+            List<String> questions = BatchRunner.readQuestions(input);
+            System.out.println(Colors.CYAN + "\n📚 Answering " + questions.size() + " questions from " + input
+                    + " (parallel " + parallel + (rate > 0 ? ", " + rate + "/s" : "") + ")" + Colors.RESET);
+
+            BatchRunner.Result result = new BatchRunner(aiProvider, progressTracker, parallel, rate)
+                    .run(questions, output, StudyMentor::appendHistory);
+
+            System.out.println(Colors.GREEN + "✅ " + result.answered + " answered, " + result.failed + " failed → "
+                    + output + Colors.RESET);
+            System.out.printf("⏱️ %.1f s, %.2f questions/sec%n",
+                    result.elapsedMillis / 1000.0, result.questionsPerSecond());
+        } catch (Exception e) {
+            System.out.println(Colors.RED + "❌ Batch failed: " + e.getMessage() + Colors.RESET);
+        }
+
+        saveAndClose();
+    }
+
+    // ============================
+    // Server mode
+    // ============================
+    // java StudyMentor --server [--port 8080]
+    private static void runServer(String[] args) {
+        int port = StudyServer.DEFAULT_PORT;
+        try {
+            if (args.length > 2 && args[1].equals("--port")) port = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.out.println(Colors.RED + "Usage: java StudyMentor --server [--port N]" + Colors.RESET);
+            return;
+        }
+
+        profile = dataHandler.loadProfile();
+        if (profile != null) currentAIProvider = profile.getPreferredAI();
+        progressTracker = new ProgressTracker();
+        progressTracker.loadStats(dataHandler);
+        progressTracker.startSnapshots(dataHandler);
+
+        initializeAIProvider();
+        if (!aiProvider.isAvailable()) return;
+
+        StudyServer server = new StudyServer(aiProvider, answerCache, prompts, progressTracker);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.out.println(Colors.RED + "❌ Could not start server: " + e.getMessage() + Colors.RESET);
+            return;
+        }
+        System.out.println(Colors.CYAN + "🌐 StudyMentor server listening on http://localhost:" + port
+                + " (Ctrl+C to stop)" + Colors.RESET);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            saveAndClose();
+        }));
+    }
 
     private static void initializeAIProvider() {
+        if (aiProvider != null) aiProvider.close();
         aiProvider = new AIProvider(currentAIProvider);
+        aiProvider.setCache(answerCache);
 
         if (!aiProvider.isAvailable()) {
             System.out.println(Colors.RED + "\n⚠️ AI key not found for " + currentAIProvider + Colors.RESET);
@@ -84,9 +229,34 @@ public class StudyMentor {
                     """ + Colors.RESET);
         } else {
             System.out.println(Colors.GREEN + "✅ " + currentAIProvider + " initialized!" + Colors.RESET);
+            initializeBackupProvider();
         }
     }
 
+    // With both keys set, slow answers are hedged against the other provider.
+    // STUDYMENTOR_HEDGE=off disables this; STUDYMENTOR_HEDGE_DELAY_MS fixes the
+    // delay instead of using the primary's recent p95.
+    private static void initializeBackupProvider() {
+        if ("off".equalsIgnoreCase(System.getenv("STUDYMENTOR_HEDGE"))) return;
+
+        String other = currentAIProvider.equalsIgnoreCase("OpenAI") ? "Gemini" : "OpenAI";
+        AIProvider backup = new AIProvider(other);
+        if (!backup.isAvailable()) {
+            backup.close();
+            return;
+        }
+
+        Duration delay = null;
+        try {
+            String fixed = System.getenv("STUDYMENTOR_HEDGE_DELAY_MS");
+            if (fixed != null && !fixed.isEmpty()) delay = Duration.ofMillis(Long.parseLong(fixed.trim()));
+        } catch (NumberFormatException ignored) {}
+
+        backup.setCache(answerCache);
+        aiProvider.setBackup(backup, delay);
+        System.out.println(Colors.GREEN + "🛡️ Hedging slow requests with " + other + Colors.RESET);
+    }
+
 
     private static void createProfile() {
         System.out.println(Colors.CYAN + "\n📝 Create Profile" + Colors.RESET);
@@ -136,6 +306,7 @@ public class StudyMentor {
                 7. 💾 Export History
                 8. 🔄 Change AI Provider
                 9. 📊 View Statistics
+                10. 🔎 Search History
 
                 0. 🚪 Exit
                 """);
@@ -159,30 +330,72 @@ public class StudyMentor {
 
     private static void askQuestion() {
         System.out.println(Colors.CYAN + "\n💬 Ask your question" + Colors.RESET);
-        System.out.print("Your question: ");
+        System.out.print("Your question (or \"new\" to start a new conversation): ");
         String q = scanner.nextLine();
 
+        if (q.trim().equalsIgnoreCase("new")) {
+            conversation.clear();
+            System.out.println(Colors.GREEN + "🆕 Started a new conversation." + Colors.RESET);
+            return;
+        }
+
+        ConversationContext.Packed context = conversation.pack();
+        // Follow-ups depend on the conversation, so only fresh questions are matched against history
+        LocalAnswers.Match match = context.isEmpty() ? localAnswers.find(q) : null;
+
         if (!aiProvider.isAvailable()) {
-            System.out.println(Colors.RED + "❌ AI Provider not available." + Colors.RESET);
+            if (match == null) {
+                System.out.println(Colors.RED + "❌ AI Provider not available." + Colors.RESET);
+                return;
+            }
+            System.out.println(Colors.YELLOW + "📴 AI Provider not available, answering from your history." + Colors.RESET);
+            useLocalAnswer(q, match);
+            System.out.println("\nPress Enter to continue...");
+            scanner.nextLine();
             return;
         }
 
-        System.out.println(Colors.YELLOW + "\n🤖 Thinking..." + Colors.RESET);
+        if (match != null) {
+            System.out.printf(Colors.CYAN + "📚 You asked something similar on %s (%.0f%% match):%n   \"%s\"%n" + Colors.RESET,
+                    match.askedAt, match.similarity * 100, match.question);
+            System.out.print("Use the saved answer? (y = saved answer, Enter = ask " + currentAIProvider + "): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                useLocalAnswer(q, match);
+                System.out.println("\nPress Enter to continue...");
+                scanner.nextLine();
+                return;
+            }
+        }
 
-        try {
-            String ans = aiProvider.askQuestion(q);
-            System.out.println(Colors.GREEN + "\n📝 Answer:\n" + Colors.RESET + ans);
+        if (!context.isEmpty()) {
+            System.out.println(Colors.CYAN + "🧵 Following on from " + context.getTurnCount() + " recent question(s)"
+                    + (context.getSummarizedTurns() > 0 ? " and a summary of " + context.getSummarizedTurns() + " earlier" : "")
+                    + ", ~" + context.getEstimatedTokens() + " tokens of context" + Colors.RESET);
+        }
 
-            String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        System.out.println(Colors.YELLOW + "\n🤖 Thinking... (c + Enter cancels, type another question to queue it)" + Colors.RESET);
 
-            conversationHistory.add("[" + time + "] Q: " + q);
-            conversationHistory.add("[" + time + "] A: " + ans);
+        List<Map.Entry<String, CompletableFuture<String>>> queue = new ArrayList<>();
+        System.out.println(Colors.GREEN + "\n📝 Answer:" + Colors.RESET);
+        String ans = streamAnswer(q, context, queue);
+        if (ans != null) {
+            recordAnswer(q, ans);
+        } else if (match != null) {
+            System.out.print("Show the saved answer from " + match.askedAt + " instead? (y/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) useLocalAnswer(q, match);
+        }
 
-            dataHandler.saveHistory(conversationHistory);
-            progressTracker.recordQuestion();
+        // Follow-ups typed while waiting were sent right away; show them in order
+        for (int i = 0; i < queue.size(); i++) {
+            String followUp = queue.get(i).getKey();
+            System.out.println(Colors.CYAN + "\n💬 Follow-up: " + Colors.RESET + followUp);
+            System.out.println(Colors.GREEN + "📝 Answer:" + Colors.RESET);
 
-        } catch (Exception e) {
-            System.out.println(Colors.RED + "❌ Error: " + e.getMessage() + Colors.RESET);
+            String followUpAns = awaitAnswer(queue.get(i).getValue(), Spinner.start("Thinking..."), queue);
+            if (followUpAns != null) {
+                System.out.println(followUpAns);
+                recordAnswer(followUp, followUpAns);
+            }
         }
 
         System.out.println("\nPress Enter to continue...");
@@ -208,20 +421,11 @@ public class StudyMentor {
         System.out.print("Level (Beginner/Intermediate/Advanced): ");
         String level = scanner.nextLine();
 
-        String prompt = """
-                Create a %s-day study plan for %s.
-                Level: %s
-                Daily time: %s hours
-                Include daily goals, topics, and weekly review.
-                """.formatted(days, subject, level, hours);
-
-        try {
-            String ans = aiProvider.askQuestion(prompt);
-            System.out.println(Colors.GREEN + "\n📋 Study Plan:\n" + Colors.RESET + ans);
-            progressTracker.recordStudyPlan();
+        Map<String, String> values = Map.of("days", days, "subject", subject, "level", level, "hours", hours);
 
-        } catch (Exception e) {
-            System.out.println("❌ " + e.getMessage());
+        System.out.println(Colors.GREEN + "\n📋 Study Plan:" + Colors.RESET);
+        if (streamTemplate(PromptTemplates.STUDY_PLAN, values) != null) {
+            progressTracker.recordStudyPlan(profile.getName(), subject);
         }
 
         System.out.println("\nPress Enter to continue...");
@@ -245,14 +449,18 @@ public class StudyMentor {
         String[] styles = {"ELI5", "Technical", "Visual", "Analogy"};
         String style = styles[c - 1];
 
-        String prompt = "Explain " + concept + " in a " + style + " style.";
+        System.out.println(Colors.GREEN + "\n🧠 Explanation:" + Colors.RESET);
+        streamTemplate(PromptTemplates.EXPLAIN, Map.of("concept", concept, "style", style));
 
-        try {
-            String ans = aiProvider.askQuestion(prompt);
-            System.out.println(Colors.GREEN + "\n🧠 Explanation:\n" + Colors.RESET + ans);
+        System.out.println("\nPress Enter to continue...");
+        scanner.nextLine();
+    }
 
-        } catch (Exception e) {
-            System.out.println("❌ " + e.getMessage());
+
+    private static void getMotivation() {
+        System.out.println(Colors.GREEN + "\n💪 Motivation:" + Colors.RESET);
+        if (streamTemplate(PromptTemplates.MOTIVATION, Map.of()) != null) {
+            progressTracker.recordMotivation(profile.getName());
         }
 
         System.out.println("\nPress Enter to continue...");
@@ -260,18 +468,90 @@ public class StudyMentor {
     }
 
 
-    private static void getMotivation() {
-        try {
-            String ans = aiProvider.askQuestion("Give motivational study tips.");
-            System.out.println(Colors.GREEN + "\n💪 Motivation:\n" + Colors.RESET + ans);
-            progressTracker.recordMotivation();
+    // Already in the history, so it only joins the conversation and the counts
+    private static void useLocalAnswer(String question, LocalAnswers.Match match) {
+        System.out.println(Colors.GREEN + "\n📝 Saved answer (" + match.askedAt + "):" + Colors.RESET);
+        System.out.println(match.answer);
+        localAnswers.recordReuse();
+        conversation.addTurn(question, match.answer);
+        progressTracker.recordQuestion(profile.getName(), ProgressTracker.subjectOf(question, profile.getSubjects()));
+    }
+
+    private static void recordAnswer(String question, String answer) {
+        appendHistory(question, answer);
+        conversation.addTurn(question, answer);
+        progressTracker.recordQuestion(profile.getName(), ProgressTracker.subjectOf(question, profile.getSubjects()));
+    }
 
+    private static void appendHistory(String question, String answer) {
+        String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+        // Written to the log in the background; conversationHistory sees it once flushed
+        dataHandler.appendHistory("[" + time + "] Q: " + question, "[" + time + "] A: " + answer);
+    }
+
+    // Sends the prompt in the background and prints the answer as it streams in.
+    // Returns null if the request failed or was cancelled.
+    private static String streamAnswer(String prompt, ConversationContext.Packed context,
+                                       List<Map.Entry<String, CompletableFuture<String>>> queue) {
+        Spinner spinner = Spinner.start("Thinking...");
+        CompletableFuture<String> pending = aiProvider.askQuestionAsync(prompt, context, token -> {
+            spinner.stop();
+            printToken(token);
+        });
+
+        String ans = awaitAnswer(pending, spinner, queue);
+        if (ans != null) System.out.println();
+        return ans;
+    }
+
+    // Same for a prompt template, so the cache keys on the template and its values
+    private static String streamTemplate(String name, Map<String, String> values) {
+        Spinner spinner = Spinner.start("Thinking...");
+        CompletableFuture<String> pending = aiProvider.askTemplateAsync(prompts.get(name), values, token -> {
+            spinner.stop();
+            printToken(token);
+        });
+
+        String ans = awaitAnswer(pending, spinner, null);
+        if (ans != null) System.out.println();
+        return ans;
+    }
+
+    // Keeps the console live while a request runs: "c" cancels it, and when a
+    // queue is given any other line is sent as a follow-up question.
+    private static String awaitAnswer(CompletableFuture<String> pending, Spinner spinner,
+                                      List<Map.Entry<String, CompletableFuture<String>>> queue) {
+        try {
+            while (!pending.isDone()) {
+                if (System.in.available() > 0) {
+                    String line = scanner.nextLine().trim();
+                    if (line.equalsIgnoreCase("c")) {
+                        pending.cancel(true);
+                    } else if (!line.isEmpty() && queue != null) {
+                        queue.add(Map.entry(line, aiProvider.askQuestionAsync(line, conversation.pack(), null)));
+                        System.out.println(Colors.CYAN + "\n📥 Queued follow-up #" + queue.size() + Colors.RESET);
+                    }
+                }
+                Thread.sleep(100);
+            }
+            return pending.join();
+        } catch (CancellationException e) {
+            System.out.println(Colors.YELLOW + "\n⏹️ Request cancelled." + Colors.RESET);
+        } catch (CompletionException e) {
+            System.out.println(Colors.RED + "\n❌ Error: " + e.getCause().getMessage() + Colors.RESET);
         } catch (Exception e) {
-            System.out.println("❌ " + e.getMessage());
+            System.out.println(Colors.RED + "\n❌ Error: " + e.getMessage() + Colors.RESET);
+        } finally {
+            spinner.stop();
         }
+        return null;
+    }
 
-        System.out.println("\nPress Enter to continue...");
-        scanner.nextLine();
+    // Prints streamed text as soon as it arrives
+    private static void printToken(String token) {
+        System.out.print(token);
+        System.out.flush();
     }
 
 
@@ -282,6 +562,27 @@ public class StudyMentor {
         System.out.println("Subjects: " + String.join(", ", profile.getSubjects()));
         System.out.println("Sessions: " + progressTracker.getTotalSessions());
         System.out.println("Questions: " + progressTracker.getTotalQuestions());
+        System.out.println("Study Plans: " + progressTracker.getTotalStudyPlans());
+        Map<String, Long> bySubject = progressTracker.getSubjectCounts();
+        if (!bySubject.isEmpty()) {
+            System.out.println("Most studied: " + bySubject.keySet().iterator().next());
+        }
+
+        StudyTimeline timeline = progressTracker.getTimeline();
+        if (timeline != null) {
+            int[] questions = timeline.perDay(StudyTimeline.Kind.QUESTION, 14);
+            System.out.println(Colors.YELLOW + "\nLast 14 days" + Colors.RESET);
+            System.out.println("Questions |" + StudyTimeline.sparkline(questions) + "| "
+                    + StudyTimeline.weekTrend(questions));
+            for (String subject : profile.getSubjects()) {
+                int[] days = timeline.perDay(subject, 14);
+                if (StudyTimeline.sum(days, 0, days.length) > 0) {
+                    System.out.printf("%-9s |%s| %s%n", subject, StudyTimeline.sparkline(days), StudyTimeline.weekTrend(days));
+                }
+            }
+            int streak = timeline.streak();
+            if (streak > 1) System.out.println("🔥 Study streak: " + streak + " days");
+        }
 
         System.out.println("\nPress Enter...");
         scanner.nextLine();
@@ -329,24 +630,75 @@ public class StudyMentor {
     }
 
 
+    private static void searchHistory() {
+        System.out.print(Colors.CYAN + "\n🔎 Search your past questions and answers: " + Colors.RESET);
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) return;
+
+        long start = System.nanoTime();
+        List<HistorySearch.Hit> hits = dataHandler.searchHistory(query, 50);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        // Show each exchange once, with its question, even when only the answer matched
+        List<Integer> shown = new ArrayList<>();
+        for (HistorySearch.Hit hit : hits) {
+            int first = hit.index;
+            if (first > 0 && HistorySearch.isAnswer(conversationHistory.get(first))
+                    && HistorySearch.isQuestion(conversationHistory.get(first - 1))) {
+                first--;
+            }
+            if (!shown.contains(first)) shown.add(first);
+            if (shown.size() == 10) break;
+        }
+        if (shown.isEmpty()) {
+            System.out.println("⚠️ Nothing found.");
+            return;
+        }
+
+        System.out.printf("%d results in %.1f ms%n", shown.size(), micros / 1000.0);
+        for (int first : shown) {
+            System.out.println(Colors.YELLOW + "\n" + conversationHistory.get(first) + Colors.RESET);
+            if (first + 1 < conversationHistory.size() && HistorySearch.isAnswer(conversationHistory.get(first + 1))) {
+                String answer = conversationHistory.get(first + 1);
+                System.out.println(answer.length() > 300 ? answer.substring(0, 300) + "…" : answer);
+            }
+        }
+    }
+
     private static void exportHistory() {
+        dataHandler.flush();
         if (conversationHistory.isEmpty()) {
             System.out.println("⚠️ No history.");
             return;
         }
 
-        try {
-            String file = "study_history_" +
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
-                    + ".txt";
+        System.out.println("""
+                1. Text
+                2. Markdown
+                3. JSONL
+                4. CSV
+                """);
+        int c = getChoice(4);
+        HistoryExporter.Format format = HistoryExporter.Format.values()[Math.max(c, 1) - 1];
 
-            FileWriter fw = new FileWriter(file);
+        System.out.print("Compress with gzip? (y/n): ");
+        boolean gzip = scanner.nextLine().trim().equalsIgnoreCase("y");
+        String from = askDate("From date (yyyy-MM-dd, Enter for all): ");
+        String to = askDate("To date (yyyy-MM-dd, Enter for all): ");
+        System.out.print("Only exchanges containing (Enter for all): ");
+        String keyword = scanner.nextLine().trim();
 
-            for (String s : conversationHistory) fw.write(s + "\n");
+        try {
+            HistoryExporter exporter = new HistoryExporter(format, gzip, from, to, keyword);
+            String file = exporter.fileName("study_history_" +
+                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")));
 
-            fw.close();
+            HistoryExporter.Result result = exporter.export(conversationHistory, new File(file));
 
             System.out.println("Saved → " + file);
+            System.out.printf("📦 %d exchanges from %d entries, %.1f MB%s in %.2f s (%.1f MB/s, %.0f entries/s)%n",
+                    result.exchangesWritten, result.entriesRead, result.bytesWritten / 1e6, gzip ? String.format(" (%.1f MB gzipped)", result.bytesOnDisk / 1e6) : "",
+                    result.nanos / 1e9, result.megabytesPerSecond(), result.entriesPerSecond());
 
         } catch (Exception e) {
             System.out.println("❌ " + e.getMessage());
@@ -356,6 +708,19 @@ public class StudyMentor {
         scanner.nextLine();
     }
 
+    // Empty input means no bound; anything unparseable is ignored with a warning
+    private static String askDate(String prompt) {
+        System.out.print(prompt);
+        String date = scanner.nextLine().trim();
+        if (date.isEmpty()) return null;
+        try {
+            return LocalDate.parse(date).toString();
+        } catch (DateTimeException e) {
+            System.out.println(Colors.YELLOW + "⚠️ Not a date, ignoring: " + date + Colors.RESET);
+            return null;
+        }
+    }
+
 
     private static void changeAIProvider() {
         System.out.println("""
@@ -386,9 +751,31 @@ public class StudyMentor {
 
     private static void viewStatistics() {
         progressTracker.displayStatistics();
-
-        System.out.println("\nPress Enter...");
-        scanner.nextLine();
+        answerCache.displayStatistics();
+        if (localAnswers.getReusedCount() > 0) {
+            System.out.println("   Answers reused from history: " + localAnswers.getReusedCount());
+        }
+        SingleFlight flights = aiProvider.getSingleFlight();
+        if (flights.getCoalescedCount() > 0) {
+            System.out.println("   Shared in-flight answers: " + flights.getCoalescedCount()
+                    + " (upstream calls " + flights.getCallCount() + ")");
+        }
+        if (aiProvider.getKeyPool().size() > 1) {
+            aiProvider.getKeyPool().displayStatus(currentAIProvider);
+        }
+        AIProvider.METRICS.display();
+
+        System.out.print("\nPress Enter, or type 'prom' or 'json' to export the AI call metrics: ");
+        String export = scanner.nextLine().trim().toLowerCase();
+        if (export.equals("prom") || export.equals("json")) {
+            File file = new File(export.equals("prom") ? "studymentor_metrics.prom" : "studymentor_metrics.json");
+            try {
+                AIProvider.METRICS.export(file);
+                System.out.println(Colors.GREEN + "✅ Metrics written to " + file + Colors.RESET);
+            } catch (IOException e) {
+                System.out.println(Colors.RED + "❌ Could not write metrics: " + e.getMessage() + Colors.RESET);
+            }
+        }
     }
 
 }
@@ -0,0 +1,409 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves StudyMentor to many students from one JVM over HTTP/JSON. Every
+ * request names its student ("user" in the JSON body or the query string);
+ * each student gets a session with their own profile, conversation context,
+ * recent history and counters. The AI provider, answer cache and in-flight
+ * de-duplication are shared by everyone.
+ *
+ * Memory per session is bounded: the conversation keeps to its token budget,
+ * history keeps the last STUDYMENTOR_SESSION_HISTORY entries and questions
+ * are capped in length. Sessions idle for STUDYMENTOR_SESSION_IDLE_MINUTES
+ * are dropped, and at most STUDYMENTOR_MAX_SESSIONS are kept (the least
+ * recently used goes first).
+ *
+ *   POST /ask         {"user", "question", "new": true to start over}
+ *   POST /plan        {"user", "subject", "days", "hours", "level"}
+ *   POST /explain     {"user", "concept", "style"}
+ *   POST /motivation  {"user"}
+ *   GET  /stats       [?user=]
+ *   GET  /history     ?user=
+ *   GET|POST /profile {"user", "grade", "email", "subjects": "a, b"}
+ *   GET  /metrics     AI call metrics as Prometheus text, or JSON with ?format=json
+ */
+public class StudyServer {
+    static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_TEXT_CHARS = 4000;
+    private static final int MAX_SESSIONS = intFromEnv("STUDYMENTOR_MAX_SESSIONS", 1000);
+    private static final int SESSION_HISTORY = intFromEnv("STUDYMENTOR_SESSION_HISTORY", 50);
+    private static final long IDLE_MILLIS = intFromEnv("STUDYMENTOR_SESSION_IDLE_MINUTES", 30) * 60_000L;
+    private static final List<String> STYLES = List.of("ELI5", "Technical", "Visual", "Analogy");
+
+    /** A request the client got wrong; answered with its status and message. */
+    static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    // ============================
+    // Sessions
+    // ============================
+    static final class Session {
+        final String user;
+        final Profile profile;
+        final ConversationContext conversation = new ConversationContext();
+        final ProgressTracker tracker = new ProgressTracker();
+        private final ArrayDeque<String> history = new ArrayDeque<>();
+        volatile long lastSeen = System.currentTimeMillis();
+
+        Session(String user, String provider) {
+            this.user = user;
+            this.profile = new Profile(user, "", "", List.of(), provider);
+        }
+
+        synchronized void addHistory(String question, String answer) {
+            String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            history.addLast("[" + time + "] Q: " + question);
+            history.addLast("[" + time + "] A: " + answer);
+            while (history.size() > SESSION_HISTORY) history.removeFirst();
+        }
+
+        synchronized List<String> history() {
+            return new ArrayList<>(history);
+        }
+    }
+
+    private final AIProvider provider;
+    private final AnswerCache cache;
+    private final PromptTemplates prompts;
+    private final ProgressTracker totals;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread t = new Thread(task, "session-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+    private HttpServer server;
+
+    public StudyServer(AIProvider provider, AnswerCache cache, PromptTemplates prompts, ProgressTracker totals) {
+        this.provider = provider;
+        this.cache = cache;
+        this.prompts = prompts;
+        this.totals = totals;
+    }
+
+    public synchronized HttpServer start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(TaskExecutors.newPerTaskExecutor("http"));
+        route("/ask", "POST", this::ask);
+        route("/plan", "POST", this::plan);
+        route("/explain", "POST", this::explain);
+        route("/motivation", "POST", this::motivation);
+        route("/stats", "GET", this::stats);
+        route("/history", "GET", this::history);
+        route("/profile", "GET POST", this::profile);
+        route("/metrics", "GET", this::metrics);
+        server.start();
+        sweeper.scheduleWithFixedDelay(this::dropIdleSessions, 1, 1, TimeUnit.MINUTES);
+        return server;
+    }
+
+    public synchronized void stop(int delaySeconds) {
+        if (server != null) server.stop(delaySeconds);
+        sweeper.shutdownNow();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private Session session(Map<String, String> params) throws HttpError {
+        String user = params.get("user");
+        if (user == null || user.isBlank()) throw new HttpError(400, "\"user\" is required");
+        user = user.trim();
+        if (user.length() > 64 || !user.matches("[A-Za-z0-9._@-]+")) {
+            throw new HttpError(400, "\"user\" may only contain letters, digits and . _ @ -");
+        }
+
+        if (!sessions.containsKey(user) && sessions.size() >= MAX_SESSIONS) evictLeastRecent();
+        Session session = sessions.computeIfAbsent(user, u -> new Session(u, provider.getProviderName()));
+        session.lastSeen = System.currentTimeMillis();
+        return session;
+    }
+
+    private void evictLeastRecent() {
+        Session oldest = null;
+        for (Session session : sessions.values()) {
+            if (oldest == null || session.lastSeen < oldest.lastSeen) oldest = session;
+        }
+        if (oldest != null) sessions.remove(oldest.user, oldest);
+    }
+
+    private void dropIdleSessions() {
+        long cutoff = System.currentTimeMillis() - IDLE_MILLIS;
+        sessions.values().removeIf(session -> session.lastSeen < cutoff);
+    }
+
+    // ============================
+    // Endpoints
+    // ============================
+    private void ask(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Session session = session(params);
+        String question = required(params, "question");
+        if (Boolean.parseBoolean(params.get("new"))) session.conversation.clear();
+
+        ConversationContext.Packed context = session.conversation.pack();
+        String answer = provider.askQuestion(question, context);
+        session.conversation.addTurn(question, answer);
+        session.addHistory(question, answer);
+        String subject = ProgressTracker.subjectOf(question, session.profile.getSubjects());
+        session.tracker.recordQuestion(session.user, subject);
+        totals.recordQuestion(session.user, subject);
+
+        sendJson(exchange, 200, json -> {
+            json.name("answer").value(answer);
+            json.name("contextTurns").value(context.getTurnCount());
+        });
+    }
+
+    private void plan(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Session session = session(params);
+        String subject = required(params, "subject");
+        Map<String, String> values = Map.of(
+                "subject", subject,
+                "days", optional(params, "days", "7"),
+                "hours", optional(params, "hours", "1"),
+                "level", optional(params, "level", "Beginner"));
+        PromptTemplate template = prompts.get(PromptTemplates.STUDY_PLAN);
+
+        String answer = provider.askTemplate(template, values);
+        session.addHistory(template.render(values), answer);
+        session.tracker.recordStudyPlan(session.user, subject);
+        totals.recordStudyPlan(session.user, subject);
+        sendJson(exchange, 200, json -> json.name("plan").value(answer));
+    }
+
+    private void explain(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Session session = session(params);
+        String concept = required(params, "concept");
+        String requested = optional(params, "style", "ELI5");
+        String style = STYLES.stream().filter(s -> s.equalsIgnoreCase(requested)).findFirst()
+                .orElseThrow(() -> new HttpError(400, "\"style\" must be one of " + STYLES));
+
+        String answer = provider.askTemplate(prompts.get(PromptTemplates.EXPLAIN),
+                Map.of("concept", concept, "style", style));
+        session.addHistory("Explain " + concept + " (" + style + ")", answer);
+        sendJson(exchange, 200, json -> json.name("explanation").value(answer));
+    }
+
+    private void motivation(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Session session = session(params);
+        String answer = provider.askTemplate(prompts.get(PromptTemplates.MOTIVATION), Map.of());
+        session.tracker.recordMotivation(session.user);
+        totals.recordMotivation(session.user);
+        sendJson(exchange, 200, json -> json.name("motivation").value(answer));
+    }
+
+    private void stats(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Session session = params.containsKey("user") ? session(params) : null;
+        SingleFlight flights = provider.getSingleFlight();
+        sendJson(exchange, 200, json -> {
+            if (session != null) {
+                json.name("user").beginObject();
+                json.name("questionsAsked").value(session.tracker.getQuestionsAsked());
+                json.name("studyPlans").value(session.tracker.getStudyPlansCreated());
+                json.name("motivationSessions").value(session.tracker.getMotivationSessions());
+                json.name("contextTurns").value(session.conversation.pack().getTurnCount());
+                json.name("allTime").value(totals.getUserCount(session.user));
+                writeCounts(json, "subjects", session.tracker.getSubjectCounts());
+                json.endObject();
+            }
+            json.name("server").beginObject();
+            json.name("sessions").value(sessions.size());
+            json.name("questionsAsked").value(totals.getQuestionsAsked());
+            json.name("studyPlans").value(totals.getStudyPlansCreated());
+            json.name("motivationSessions").value(totals.getMotivationSessions());
+            json.name("cacheHitRate").value(cache.getHitRate());
+            json.name("sharedAnswers").value(flights.getCoalescedCount());
+            json.name("upstreamCalls").value(flights.getCallCount());
+            writeCounts(json, "subjects", totals.getSubjectCounts());
+            json.endObject();
+        });
+    }
+
+    private void history(HttpExchange exchange, Map<String, String> params) throws Exception {
+        List<String> entries = session(params).history();
+        sendJson(exchange, 200, json -> {
+            json.name("history").beginArray();
+            for (String entry : entries) json.value(entry);
+            json.endArray();
+        });
+    }
+
+    private void profile(HttpExchange exchange, Map<String, String> params) throws Exception {
+        Session session = session(params);
+        Profile profile = session.profile;
+        synchronized (profile) {
+            if (exchange.getRequestMethod().equals("POST")) {
+                if (params.containsKey("grade")) profile.setGrade(clip(params.get("grade")));
+                if (params.containsKey("email")) profile.setEmail(clip(params.get("email")));
+                if (params.containsKey("subjects")) {
+                    profile.setSubjects(Arrays.stream(clip(params.get("subjects")).split(","))
+                            .map(String::trim).filter(s -> !s.isEmpty()).toList());
+                }
+            }
+            sendJson(exchange, 200, json -> {
+                json.name("name").value(profile.getName());
+                json.name("grade").value(profile.getGrade());
+                json.name("email").value(profile.getEmail());
+                json.name("subjects").beginArray();
+                for (String subject : profile.getSubjects()) json.value(subject);
+                json.endArray();
+            });
+        }
+    }
+
+    private void metrics(HttpExchange exchange, Map<String, String> params) throws Exception {
+        boolean json = "json".equals(params.get("format"));
+        byte[] bytes = (json ? AIProvider.METRICS.toJson() : AIProvider.METRICS.toPrometheus())
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                json ? "application/json; charset=utf-8" : "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // ============================
+    // Plumbing
+    // ============================
+    private void route(String path, String methods, Handler handler) {
+        List<String> allowed = List.of(methods.split(" "));
+        server.createContext(path, exchange -> {
+            try {
+                if (!exchange.getRequestURI().getPath().equals(path)) throw new HttpError(404, "Not found");
+                if (!allowed.contains(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", String.join(", ", allowed));
+                    throw new HttpError(405, "Use " + methods.replace(" ", " or "));
+                }
+                handler.handle(exchange, params(exchange));
+            } catch (HttpError e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (ApiException e) {
+                sendError(exchange, e.getStatusCode() == 429 ? 429 : 502, "AI provider error: " + e.getMessage());
+            } catch (CircuitBreaker.OpenException e) {
+                sendError(exchange, 503, e.getMessage());
+            } catch (Exception e) {
+                System.err.println("Error handling " + path + ": " + e.getMessage());
+                sendError(exchange, 500, e.getMessage() == null ? e.toString() : e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    // Query parameters, overlaid with the fields of a JSON object body
+    private static Map<String, String> params(HttpExchange exchange) throws IOException, HttpError {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq <= 0) continue;
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) throw new HttpError(413, "Request body over " + MAX_BODY_BYTES + " bytes");
+        if (body.length == 0) return params;
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body),
+                StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (reader.peek()) {
+                    case STRING, NUMBER -> params.put(name, reader.nextString());
+                    case BOOLEAN -> params.put(name, String.valueOf(reader.nextBoolean()));
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | IOException e) {
+            throw new HttpError(400, "Body must be a JSON object: " + e.getMessage());
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) throws HttpError {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) throw new HttpError(400, "\"" + name + "\" is required");
+        if (value.length() > MAX_TEXT_CHARS) {
+            throw new HttpError(400, "\"" + name + "\" is longer than " + MAX_TEXT_CHARS + " characters");
+        }
+        return value.trim();
+    }
+
+    private static String optional(Map<String, String> params, String name, String fallback) throws HttpError {
+        String value = params.get(name);
+        return (value == null || value.isBlank()) ? fallback : required(params, name);
+    }
+
+    private static String clip(String value) {
+        value = value.trim();
+        return value.length() <= 200 ? value : value.substring(0, 200);
+    }
+
+    private interface Body {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private static void writeCounts(JsonWriter json, String name, Map<String, Long> counts) throws IOException {
+        json.name(name).beginObject();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) json.name(entry.getKey()).value(entry.getValue());
+        json.endObject();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Body body) throws IOException {
+        StringWriter text = new StringWriter();
+        try (JsonWriter json = new JsonWriter(text)) {
+            json.beginObject();
+            body.write(json);
+            json.endObject();
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            sendJson(exchange, status, json -> json.name("error").value(message));
+        } catch (IOException e) {
+            // The client has gone; nothing left to tell it
+        }
+    }
+
+    private static int intFromEnv(String name, int fallback) {
+        String value = System.getenv(name);
+        try {
+            if (value != null && !value.isEmpty()) return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ignored) {}
+        return fallback;
+    }
+}
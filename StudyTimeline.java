@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Daily activity counts in a small memory-mapped file (study_activity.bin).
+ * The file is a ring of DAYS fixed-size records, one per calendar day: the
+ * record for a day sits at epochDay % DAYS and is cleared when a newer day
+ * takes its place. The file therefore never grows, recording is a couple of
+ * int writes, and "questions per day over the last 90 days" reads 90 ints.
+ *
+ * Each record counts questions, study plans and motivation sessions, plus
+ * questions and plans per subject for up to SUBJECT_SLOTS subjects. Subject
+ * names live in the header; later subjects (and names over 58 bytes) only
+ * count towards the totals.
+ */
+public class StudyTimeline implements Closeable {
+    public static final int DAYS = 400;
+    static final int SUBJECT_SLOTS = 16;
+
+    private static final int MAGIC = 0x534D5431; // "SMT1"
+    private static final int NAME_BYTES = 60;
+    private static final int HEADER = 1024;
+    // epochDay, questions, plans, motivation, then one int per subject slot
+    private static final int FIELDS = 4 + SUBJECT_SLOTS;
+    private static final int RECORD = FIELDS * Integer.BYTES;
+    private static final long SIZE = HEADER + (long) DAYS * RECORD;
+
+    public enum Kind {
+        QUESTION(1), STUDY_PLAN(2), MOTIVATION(3);
+
+        final int field;
+
+        Kind(int field) {
+            this.field = field;
+        }
+    }
+
+    private final MappedByteBuffer map;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    public StudyTimeline(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A file of any other size is from another layout; start over
+            if (channel.size() != SIZE) channel.truncate(0);
+            // The mapping stays valid after the channel is closed
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        }
+        if (map.getInt(0) != MAGIC) {
+            for (int i = 0; i < SIZE; i += Integer.BYTES) map.putInt(i, 0);
+            map.putInt(0, MAGIC);
+        }
+        for (int slot = 0; slot < SUBJECT_SLOTS; slot++) {
+            String name = readName(slot);
+            if (name.isEmpty()) break;
+            slots.put(name, slot);
+        }
+    }
+
+    /** Counts one event today; subject may be null. */
+    public void record(Kind kind, String subject) {
+        record(LocalDate.now().toEpochDay(), kind, subject);
+    }
+
+    synchronized void record(long epochDay, Kind kind, String subject) {
+        int base = recordFor(epochDay);
+        add(base, kind.field);
+        if (subject != null && kind != Kind.MOTIVATION) {
+            int slot = slotOf(subject, true);
+            if (slot >= 0) add(base, 4 + slot);
+        }
+    }
+
+    private void add(int base, int field) {
+        int at = base + field * Integer.BYTES;
+        map.putInt(at, map.getInt(at) + 1);
+    }
+
+    // Start of the day's record, reclaiming the slot if it still holds an older day
+    private int recordFor(long epochDay) {
+        int base = HEADER + (int) Math.floorMod(epochDay, (long) DAYS) * RECORD;
+        if (map.getInt(base) != (int) epochDay) {
+            for (int i = 1; i < FIELDS; i++) map.putInt(base + i * Integer.BYTES, 0);
+            map.putInt(base, (int) epochDay);
+        }
+        return base;
+    }
+
+    private int slotOf(String subject, boolean create) {
+        String key = subject.trim().toLowerCase(Locale.ROOT);
+        if (key.isEmpty()) return -1;
+        Integer slot = slots.get(key);
+        if (slot != null) return slot;
+        byte[] name = key.getBytes(StandardCharsets.UTF_8);
+        if (!create || slots.size() >= SUBJECT_SLOTS || name.length > NAME_BYTES - 2) return -1;
+        slot = slots.size();
+        writeName(slot, name);
+        slots.put(key, slot);
+        return slot;
+    }
+
+    // ============================
+    // Queries
+    // ============================
+    /** Counts for the `days` days ending today, oldest first. */
+    public int[] perDay(Kind kind, int days) {
+        return perDay(LocalDate.now().toEpochDay(), days, kind.field);
+    }
+
+    /** Questions and study plans about one subject, per day, oldest first. */
+    public synchronized int[] perDay(String subject, int days) {
+        int slot = slotOf(subject, false);
+        if (slot < 0) return new int[Math.max(0, Math.min(days, DAYS))];
+        return perDay(LocalDate.now().toEpochDay(), days, 4 + slot);
+    }
+
+    synchronized int[] perDay(long today, int days, int field) {
+        int[] counts = new int[Math.max(0, Math.min(days, DAYS))];
+        for (int i = 0; i < counts.length; i++) {
+            long day = today - counts.length + 1 + i;
+            int base = HEADER + (int) Math.floorMod(day, (long) DAYS) * RECORD;
+            if (map.getInt(base) == (int) day) counts[i] = map.getInt(base + field * Integer.BYTES);
+        }
+        return counts;
+    }
+
+    /** Questions and study plans per subject over the last `days` days, most active first. */
+    public synchronized Map<String, Long> subjectTotals(int days) {
+        long today = LocalDate.now().toEpochDay();
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (Map.Entry<String, Integer> subject : slots.entrySet()) {
+            long total = 0;
+            for (int n : perDay(today, days, 4 + subject.getValue())) total += n;
+            if (total > 0) entries.add(Map.entry(subject.getKey(), total));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : entries) result.put(e.getKey(), e.getValue());
+        return result;
+    }
+
+    /**
+     * Consecutive days with at least one question or study plan, ending today,
+     * or yesterday while nothing has happened today yet.
+     */
+    public synchronized int streak() {
+        long today = LocalDate.now().toEpochDay();
+        int[] questions = perDay(today, DAYS, Kind.QUESTION.field);
+        int[] plans = perDay(today, DAYS, Kind.STUDY_PLAN.field);
+        int i = questions.length - 1;
+        if (questions[i] + plans[i] == 0) i--;
+        int days = 0;
+        for (; i >= 0 && questions[i] + plans[i] > 0; i--) days++;
+        return days;
+    }
+
+    // ============================
+    // Display
+    // ============================
+    private static final char[] BARS = "▁▂▃▄▅▆▇█".toCharArray();
+
+    /** One bar per value, scaled to the largest; days with nothing show as a space. */
+    public static String sparkline(int[] counts) {
+        int max = 0;
+        for (int n : counts) max = Math.max(max, n);
+        StringBuilder line = new StringBuilder(counts.length);
+        for (int n : counts) {
+            line.append(n == 0 ? ' ' : BARS[(int) ((long) (n - 1) * BARS.length / max)]);
+        }
+        return line.toString();
+    }
+
+    static long sum(int[] counts, int from, int to) {
+        long total = 0;
+        for (int i = Math.max(0, from); i < Math.min(to, counts.length); i++) total += counts[i];
+        return total;
+    }
+
+    /** "↑ 25%" style change of the last 7 days against the 7 before. */
+    public static String weekTrend(int[] counts) {
+        int n = counts.length;
+        long thisWeek = sum(counts, n - 7, n);
+        long lastWeek = sum(counts, n - 14, n - 7);
+        if (lastWeek == 0) return thisWeek == 0 ? "–" : "new";
+        long change = Math.round((thisWeek - lastWeek) * 100.0 / lastWeek);
+        return (change > 0 ? "↑ " : change < 0 ? "↓ " : "→ ") + Math.abs(change) + "% vs last week";
+    }
+
+    // ============================
+    // Header
+    // ============================
+    private String readName(int slot) {
+        int at = 16 + slot * NAME_BYTES;
+        int length = Math.min(map.getShort(at), NAME_BYTES - 2);
+        if (length <= 0) return "";
+        byte[] bytes = new byte[length];
+        map.get(at + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeName(int slot, byte[] bytes) {
+        int at = 16 + slot * NAME_BYTES;
+        map.put(at + 2, bytes);
+        map.putShort(at, (short) bytes.length);
+    }
+
+    @Override
+    public synchronized void close() {
+        map.force();
+    }
+}
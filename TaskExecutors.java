@@ -0,0 +1,29 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking I/O work such as AI requests.
+ *
+ * On Java 21+ each task gets its own virtual thread. The project still
+ * compiles and runs on Java 17, where this falls back to a cached pool of
+ * daemon platform threads.
+ */
+public final class TaskExecutors {
+
+    private TaskExecutors() {}
+
+    public static ExecutorService newPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread t = new Thread(task, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
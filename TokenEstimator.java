@@ -0,0 +1,30 @@
+/**
+ * Cheap local estimate of how many tokens a text costs, close enough to the
+ * providers' tokenizers for budgeting without calling them. Runs of letters
+ * and digits cost about one token per four characters, punctuation one each,
+ * whitespace nothing, and non-ASCII characters one each (CJK and most
+ * accented text tokenize poorly).
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {}
+
+    public static int estimate(CharSequence text) {
+        int tokens = 0;
+        int run = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                run++;
+                continue;
+            }
+            if (run > 0) {
+                tokens += (run + 3) / 4;
+                run = 0;
+            }
+            if (c >= 128 || !Character.isWhitespace(c)) tokens++;
+        }
+        if (run > 0) tokens += (run + 3) / 4;
+        return tokens;
+    }
+}
@@ -0,0 +1,65 @@
+package studymentor.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * The application classes live in the default package, which a named package
+ * cannot import (and JMH refuses benchmarks in the default package). The
+ * benchmarks reach them through method handles held in static finals, which
+ * the JIT inlines like a direct call.
+ */
+final class App {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private App() {}
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("StudyMentor classes not on the classpath: " + name, e);
+        }
+    }
+
+    static MethodHandle constructor(String owner, Class<?>... params) {
+        try {
+            return lookup(owner).findConstructor(type(owner), MethodType.methodType(void.class, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle method(String owner, String name, Class<?> returns, Class<?>... params) {
+        try {
+            return lookup(owner).findVirtual(type(owner), name, MethodType.methodType(returns, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle staticMethod(String owner, String name, Class<?> returns, Class<?>... params) {
+        try {
+            return lookup(owner).findStatic(type(owner), name, MethodType.methodType(returns, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Everything runs in the unnamed module, so package-private members are reachable too
+    private static MethodHandles.Lookup lookup(String owner) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type(owner), LOOKUP);
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
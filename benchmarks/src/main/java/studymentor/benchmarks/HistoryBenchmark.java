@@ -0,0 +1,79 @@
+package studymentor.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * DataHandler.saveHistory / loadHistory at several history sizes. Each
+ * operation uses a fresh DataHandler, the way StudyMentor does on start-up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+    private static final MethodHandle NEW_HANDLER = App.constructor("DataHandler", File.class);
+    private static final MethodHandle SAVE_HISTORY = App.method("DataHandler", "saveHistory", void.class, List.class);
+    private static final MethodHandle LOAD_HISTORY = App.method("DataHandler", "loadHistory", List.class);
+    private static final MethodHandle CLOSE_HISTORY = App.method("DataHandler", "closeHistory", void.class);
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Path dir;
+    private File dataDir;
+    private List<String> entries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dir = Files.createTempDirectory("studymentor-jmh");
+        dataDir = dir.toFile();
+        entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add((i % 2 == 0 ? "[2024-05-01 10:00:00] Q: " : "[2024-05-01 10:00:00] A: ")
+                    + "Entry " + i + " with \"quotes\", a\nnewline and some text to give it a realistic length.");
+        }
+        Object handler = NEW_HANDLER.invoke(dataDir);
+        SAVE_HISTORY.invoke(handler, entries);
+        CLOSE_HISTORY.invoke(handler);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        App.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void saveHistory() throws Throwable {
+        Object handler = NEW_HANDLER.invoke(dataDir);
+        SAVE_HISTORY.invoke(handler, entries);
+        CLOSE_HISTORY.invoke(handler);
+    }
+
+    @Benchmark
+    public int loadHistory() throws Throwable {
+        Object handler = NEW_HANDLER.invoke(dataDir);
+        List<?> history = (List<?>) LOAD_HISTORY.invoke(handler);
+        int count = history.size(); // the store opens lazily
+        CLOSE_HISTORY.invoke(handler);
+        return count;
+    }
+
+    @Benchmark
+    public void loadAndIterateHistory(Blackhole bh) throws Throwable {
+        Object handler = NEW_HANDLER.invoke(dataDir);
+        for (Object entry : (List<?>) LOAD_HISTORY.invoke(handler)) {
+            bh.consume(entry);
+        }
+        CLOSE_HISTORY.invoke(handler);
+    }
+}
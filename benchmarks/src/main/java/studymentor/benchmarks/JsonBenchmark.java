@@ -0,0 +1,62 @@
+package studymentor.benchmarks;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Request escaping (AIProvider.escapeJson) and response extraction
+ * (ResponseParser, which replaced unescapeJson) on large payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private static final MethodHandle ESCAPE_JSON = App.staticMethod("AIProvider", "escapeJson", String.class, String.class);
+    private static final MethodHandle OPENAI_CONTENT = App.staticMethod("ResponseParser", "openAIContent", String.class, Reader.class);
+    private static final MethodHandle GEMINI_TEXT = App.staticMethod("ResponseParser", "geminiText", String.class, Reader.class);
+
+    private static final String SAMPLE = "Newton's second law: \"F = ma\".\n\tForce is in newtons, "
+            + "mass in kg \\ acceleration in m/s². ";
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadChars;
+
+    private String payload;
+    private String openAIResponse;
+    private String geminiResponse;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        StringBuilder text = new StringBuilder(payloadChars + SAMPLE.length());
+        while (text.length() < payloadChars) text.append(SAMPLE);
+        payload = text.substring(0, payloadChars);
+
+        String escaped = (String) ESCAPE_JSON.invoke(payload);
+        openAIResponse = "{\"id\":\"chatcmpl-bench\",\"object\":\"chat.completion\",\"model\":\"gpt-3.5-turbo\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + escaped + "\"},"
+                + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":512}}";
+        geminiResponse = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + escaped + "\"}],\"role\":\"model\"},"
+                + "\"finishReason\":\"STOP\",\"index\":0}],\"usageMetadata\":{\"promptTokenCount\":12}}";
+    }
+
+    @Benchmark
+    public String escapeJson() throws Throwable {
+        return (String) ESCAPE_JSON.invoke(payload);
+    }
+
+    @Benchmark
+    public String parseOpenAIResponse() throws Throwable {
+        return (String) OPENAI_CONTENT.invoke((Reader) new StringReader(openAIResponse));
+    }
+
+    @Benchmark
+    public String parseGeminiResponse() throws Throwable {
+        return (String) GEMINI_TEXT.invoke((Reader) new StringReader(geminiResponse));
+    }
+}
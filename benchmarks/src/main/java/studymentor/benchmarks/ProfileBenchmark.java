@@ -0,0 +1,56 @@
+package studymentor.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * DataHandler.writeProfile (the disk write behind the queued saveProfile) and
+ * loadProfile against a temporary data directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileBenchmark {
+    private static final Class<?> PROFILE = App.type("Profile");
+    private static final MethodHandle NEW_HANDLER = App.constructor("DataHandler", File.class);
+    private static final MethodHandle NEW_PROFILE = App.constructor("Profile",
+            String.class, String.class, String.class, List.class, String.class);
+    private static final MethodHandle SAVE_PROFILE = App.method("DataHandler", "writeProfile", void.class, PROFILE);
+    private static final MethodHandle LOAD_PROFILE = App.method("DataHandler", "loadProfile", PROFILE);
+
+    private Path dir;
+    private Object handler;
+    private Object profile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dir = Files.createTempDirectory("studymentor-jmh");
+        handler = NEW_HANDLER.invoke(dir.toFile());
+        profile = NEW_PROFILE.invoke("Benchmark Student", "College", "student@example.com",
+                List.of("Math", "Physics", "Chemistry", "History"), "OpenAI");
+        SAVE_PROFILE.invoke(handler, profile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        App.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void saveProfile() throws Throwable {
+        SAVE_PROFILE.invoke(handler, profile);
+    }
+
+    @Benchmark
+    public Object loadProfile() throws Throwable {
+        return LOAD_PROFILE.invoke(handler);
+    }
+}
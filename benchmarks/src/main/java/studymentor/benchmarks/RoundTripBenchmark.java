@@ -0,0 +1,49 @@
+package studymentor.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A full blocking AIProvider.askQuestion round trip (build request, HTTP over
+ * loopback, parse response) against StubSSEServer running in-process.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    private static final MethodHandle START_SERVER = App.staticMethod("StubSSEServer", "start", HttpServer.class, int.class);
+    private static final MethodHandle NEW_PROVIDER = App.constructor("AIProvider", String.class, String.class, String.class);
+    private static final MethodHandle SET_RATE_LIMIT = App.staticMethod("RequestGuard", "setRateLimit", void.class, double.class);
+    private static final MethodHandle ASK_QUESTION = App.method("AIProvider", "askQuestion", String.class, String.class);
+
+    @Param({"OpenAI", "Gemini"})
+    public String provider;
+
+    private HttpServer server;
+    private Object client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        // Round trips, not token bucket waits, whatever STUDYMENTOR_RATE_LIMIT says
+        SET_RATE_LIMIT.invoke(0.0);
+        server = (HttpServer) START_SERVER.invoke(0);
+        String base = "http://localhost:" + server.getAddress().getPort();
+        String baseUrl = provider.equals("OpenAI") ? base + "/v1" : base + "/v1beta";
+        client = NEW_PROVIDER.invoke(provider, "bench-key", baseUrl);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String askQuestion() throws Throwable {
+        return (String) ASK_QUESTION.invoke(client, "What is spaced repetition?");
+    }
+}